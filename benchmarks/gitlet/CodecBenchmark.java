@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares Codec with Java serialization for the objects gitlet
+ * reads on every command: commits and trees. The sizes of both
+ * encodings are printed during setup.
+ * @author Kevin Moy**/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Number of files in the benchmarked tree. **/
+    @Param({"10", "1000"})
+    private int _files;
+
+    /** Build the commit and tree, and their encodings. **/
+    @Setup
+    public void setup() {
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < _files; i += 1) {
+            files.put("file" + i + ".txt", Utils.sha1("contents" + i));
+        }
+        _commit = new Commit("merged branch", new String[] {
+            Utils.sha1("first"), Utils.sha1("second")}, files);
+        _tree = _commit.getTree();
+        _javaCommit = Utils.serialize(_commit);
+        _codecCommit = Codec.encode(_commit);
+        _javaTree = Utils.serialize(_tree);
+        _codecTree = Codec.encode(_tree);
+        System.out.printf("%ncommit: java %d bytes, codec %d bytes; "
+                + "tree: java %d bytes, codec %d bytes%n",
+                _javaCommit.length, _codecCommit.length,
+                _javaTree.length, _codecTree.length);
+    }
+
+    /** Java-serialize a commit.
+     * @return encoding.**/
+    @Benchmark
+    public byte[] javaWriteCommit() {
+        return Utils.serialize(_commit);
+    }
+
+    /** Encode a commit.
+     * @return encoding.**/
+    @Benchmark
+    public byte[] codecWriteCommit() {
+        return Codec.encode(_commit);
+    }
+
+    /** Java-deserialize a commit.
+     * @return commit.**/
+    @Benchmark
+    public Commit javaReadCommit() {
+        return Utils.deserialize(_javaCommit, Commit.class);
+    }
+
+    /** Decode a commit.
+     * @return commit.**/
+    @Benchmark
+    public Commit codecReadCommit() {
+        return Codec.decodeCommit(_codecCommit, _commit.getID());
+    }
+
+    /** Java-serialize a tree.
+     * @return encoding.**/
+    @Benchmark
+    public byte[] javaWriteTree() {
+        return Utils.serialize(_tree);
+    }
+
+    /** Encode a tree.
+     * @return encoding.**/
+    @Benchmark
+    public byte[] codecWriteTree() {
+        return Codec.encode(_tree);
+    }
+
+    /** Java-deserialize a tree.
+     * @return tree.**/
+    @Benchmark
+    public Tree javaReadTree() {
+        return Utils.deserialize(_javaTree, Tree.class);
+    }
+
+    /** Decode a tree.
+     * @return tree.**/
+    @Benchmark
+    public Tree codecReadTree() {
+        return Codec.decodeTree(_codecTree, _tree.getID());
+    }
+
+    /** Commit with two parents and _files files. **/
+    private Commit _commit;
+    /** Tree of _commit. **/
+    private Tree _tree;
+    /** _commit, Java-serialized. **/
+    private byte[] _javaCommit;
+    /** _commit, encoded with Codec. **/
+    private byte[] _codecCommit;
+    /** _tree, Java-serialized. **/
+    private byte[] _javaTree;
+    /** _tree, encoded with Codec. **/
+    private byte[] _codecTree;
+
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Times the gitlet commands as Main runs them, minus JVM startup:
+ * each invocation reads the repository state, runs the command and
+ * writes the state back (see Main.execute). <p></p>
+ * Every trial generates a repository in the working directory, so run
+ * the benchmarks from a scratch directory ("make bench" does). It has
+ * _files files of _fileSize bytes and a linear history of _commits
+ * commits, each changing one file, plus branch "side" from halfway
+ * along, which merging is a real merge (see RepoGenerator). commit,
+ * reset and merge start every invocation from the same state (see
+ * Restored); add and checkoutBranch alternate between two. Command
+ * output is discarded.
+ * @author Kevin Moy**/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    /** Number of commits on master. **/
+    @Param({"10", "1000"})
+    private int _commits;
+    /** Number of tracked files. **/
+    @Param({"100", "2000"})
+    private int _files;
+    /** Size of each file in bytes. **/
+    @Param({"100", "10000"})
+    private int _fileSize;
+
+    /** Build the repository and silence System.out. **/
+    @Setup(Level.Trial)
+    public void setup() {
+        RepoGenerator.clean();
+        RepoGenerator generator = new RepoGenerator();
+        generator._commits = _commits;
+        generator._files = _files;
+        generator._fileSize = _fileSize;
+        generator._editRatio = 0;
+        Gitlet repo = generator.generate();
+        _master = repo.headId();
+        _first = repo.findIds("commit 0").get(0);
+        _stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /** Restore System.out and remove the repository. **/
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(_stdout);
+        RepoGenerator.clean();
+    }
+
+    /** Flip between the two states add and checkoutBranch alternate
+     * between. **/
+    @Setup(Level.Invocation)
+    public void flip() {
+        _flip = !_flip;
+    }
+
+    /** Stage the first file, with one of two new contents in turn. **/
+    @Benchmark
+    public void add() {
+        Utils.writeContents(new File(path(0)), _flip ? "changed" : "");
+        Main.execute(null, "add", path(0));
+    }
+
+    /** Stage and commit a changed file.
+     * @param restored puts master back before each invocation.**/
+    @Benchmark
+    public void commit(Restored restored) {
+        Utils.writeContents(new File(path(1)), "benchmark");
+        Main.execute(null, "add", path(1));
+        Main.execute(null, "commit", "benchmark");
+    }
+
+    /** Print the history of master. **/
+    @Benchmark
+    public void log() {
+        Main.execute(null, "log");
+    }
+
+    /** Print every commit. **/
+    @Benchmark
+    public void globalLog() {
+        Main.execute(null, "global-log");
+    }
+
+    /** Find the commits with a message. **/
+    @Benchmark
+    public void find() {
+        Main.execute(null, "find", "commit " + (_commits / 2));
+    }
+
+    /** Print the status. **/
+    @Benchmark
+    public void status() {
+        Main.execute(null, "status");
+    }
+
+    /** Check out side and master alternately. **/
+    @Benchmark
+    public void checkoutBranch() {
+        Main.execute(null, "checkout", _flip ? "side" : "master");
+    }
+
+    /** Reset master to the commit that added every file.
+     * @param restored puts master back before each invocation.**/
+    @Benchmark
+    public void reset(Restored restored) {
+        Main.execute(null, "reset", _first);
+    }
+
+    /** Merge side into master.
+     * @param restored puts master back before each invocation.**/
+    @Benchmark
+    public void merge(Restored restored) {
+        Main.execute(null, "merge", "side");
+    }
+
+    /** Puts master back at its head after setup before every invocation
+     * of the benchmarks that move it. **/
+    @State(Scope.Benchmark)
+    public static class Restored {
+
+        /** Reset master to its head after setup, if it moved.
+         * @param bench benchmark state.**/
+        @Setup(Level.Invocation)
+        public void restore(CommandBenchmark bench) {
+            Gitlet repo = Main.lastRepoState();
+            if (!bench._master.equals(repo.headId())) {
+                repo.reset(bench._master);
+                repo.save();
+            }
+        }
+    }
+
+    /** Return the path of file I.
+     * @param i file number.
+     * @return working file path.**/
+    private static String path(int i) {
+        return RepoGenerator.path(i);
+    }
+
+    /** Head of master after setup. **/
+    private String _master;
+    /** The first commit, which added every file. **/
+    private String _first;
+    /** The real System.out. **/
+    private PrintStream _stdout;
+    /** Flips at every invocation, to alternate between two states. **/
+    private boolean _flip;
+
+}
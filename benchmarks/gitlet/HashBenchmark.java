@@ -0,0 +1,114 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the SHA-1 helpers of Utils with the original ones, which
+ * looked up a new MessageDigest and formatted every byte with
+ * Formatter, and measures hashing a blob of _size bytes. Run with
+ * "-prof gc" to see the allocation per call.
+ * @author Kevin Moy**/
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    /** Size of the hashed contents in bytes. **/
+    @Param({"64", "65536", "1048576"})
+    private int _size;
+
+    /** Create the contents and a working file holding them. **/
+    @Setup
+    public void setup() throws IOException {
+        _contents = new byte[_size];
+        new Random(_size).nextBytes(_contents);
+        _file = File.createTempFile("hash", ".bin", new File("."));
+        Files.write(_file.toPath(), _contents);
+    }
+
+    /** Remove the working file. **/
+    @TearDown
+    public void tearDown() {
+        _file.delete();
+    }
+
+    /** Hash with a new digest and Formatter, as Utils.sha1 used to.
+     * @return hexadecimal ID.**/
+    @Benchmark
+    public String legacySha1() {
+        return legacySha1(_file.getName(), _contents);
+    }
+
+    /** Hash with Utils.sha1.
+     * @return hexadecimal ID.**/
+    @Benchmark
+    public String sha1() {
+        return Utils.sha1(_file.getName(), _contents);
+    }
+
+    /** Hash with Utils.sha1Binary.
+     * @return binary ID.**/
+    @Benchmark
+    public byte[] sha1Binary() {
+        return Utils.sha1Binary(_file.getName(), _contents);
+    }
+
+    /** Hash the working file as a blob.
+     * @return blob ID.**/
+    @Benchmark
+    public String blob() {
+        return new Blob(_file.getName()).getID();
+    }
+
+    /** The original Utils.sha1.
+     * @param vals byte arrays and Strings to hash.
+     * @return hexadecimal ID.**/
+    private static String legacySha1(Object... vals) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            for (Object val : vals) {
+                if (val instanceof byte[]) {
+                    md.update((byte[]) val);
+                } else {
+                    md.update(((String) val).getBytes("UTF-8"));
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException | IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Hashed contents. **/
+    private byte[] _contents;
+    /** Working file holding _contents. **/
+    private File _file;
+
+}
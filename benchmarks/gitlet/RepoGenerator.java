@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Builds synthetic gitlet repositories of a given size and history
+ * shape in the working directory. <p></p>
+ * The repository has _files tracked files of _fileSize bytes of text,
+ * in lines of 64 characters, spread over ten directories under "w".
+ * The first commit adds all of them; each of the _commits - 1 commits
+ * after it rewrites one line in each of a random _editRatio of the
+ * files (at least one file). The history shape decides which branch
+ * each commit goes to: <p></p>
+ * linear: every commit is on master. <p></p>
+ * branches: _branches feature branches b0, b1, ... leave master at
+ * the first commit, and the commits go round-robin to master and to
+ * each of them. <p></p>
+ * merges: as branches, and after every _mergeEvery commits master
+ * merges the feature branch that received the last commit; conflicts
+ * are committed with their conflict markers. <p></p>
+ * Whatever the shape, branch "side" leaves master halfway through its
+ * commits and gets three commits of its own, so merging it is always a
+ * real merge. Everything is seeded, so equal settings give equal
+ * repositories (commit IDs aside, as they cover the time). <p></p>
+ * Usage: java gitlet.RepoGenerator [--shape=linear|branches|merges]
+ * [--commits=N] [--files=N] [--size=BYTES] [--edit=RATIO]
+ * [--branches=N] [--merge-every=N] [--seed=N]
+ * @author Kevin Moy**/
+
+class RepoGenerator {
+
+    /** Generate the repository described by ARGS in the working
+     * directory, which must not hold one yet.
+     * @param args options; see the class comment.**/
+    public static void main(String... args) {
+        RepoGenerator generator = new RepoGenerator();
+        for (String arg : args) {
+            generator.option(arg);
+        }
+        if (new File(".gitlet").exists()) {
+            throw new IllegalArgumentException("repository exists");
+        }
+        long start = System.nanoTime();
+        generator.generate();
+        System.out.printf("generated %s in %d ms%n", generator,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /** Set the option ARG, of the form --NAME=VALUE.
+     * @param arg command-line option.**/
+    void option(String arg) {
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            throw new IllegalArgumentException("bad option: " + arg);
+        }
+        String value = arg.substring(eq + 1);
+        switch (arg.substring(2, eq)) {
+        case "shape":
+            if (!List.of("linear", "branches", "merges").contains(value)) {
+                throw new IllegalArgumentException("bad shape: " + value);
+            }
+            _shape = value;
+            break;
+        case "commits":
+            _commits = Math.max(1, Integer.parseInt(value));
+            break;
+        case "files":
+            _files = Math.max(1, Integer.parseInt(value));
+            break;
+        case "size":
+            _fileSize = Math.max(1, Integer.parseInt(value));
+            break;
+        case "edit":
+            _editRatio = Double.parseDouble(value);
+            break;
+        case "branches":
+            _branches = Math.max(1, Integer.parseInt(value));
+            break;
+        case "merge-every":
+            _mergeEvery = Math.max(1, Integer.parseInt(value));
+            break;
+        case "seed":
+            _seed = Long.parseLong(value);
+            break;
+        default:
+            throw new IllegalArgumentException("bad option: " + arg);
+        }
+    }
+
+    /** Build the repository in the working directory, with master
+     * checked out, and write it out. Messages of the commands it runs
+     * (such as merge conflicts) are not printed.
+     * @return the repository.**/
+    Gitlet generate() {
+        List<String> messages = Utils.collectMessages(new ArrayList<>());
+        try {
+            _random = new Random(_seed);
+            Gitlet repo = new Gitlet();
+            for (int i = 0; i < _files; i += 1) {
+                Utils.writeContents(parentsMade(path(i)), text());
+            }
+            repo.add("w");
+            repo.commit("commit 0");
+            List<String> features = new ArrayList<>();
+            if (!_shape.equals("linear")) {
+                for (int b = 0; b < _branches; b += 1) {
+                    features.add("b" + b);
+                    repo.branch("b" + b);
+                }
+            }
+            String current = "master";
+            boolean side = false;
+            for (int c = 1; c < _commits; c += 1) {
+                int turn = c % (features.size() + 1);
+                String branch = turn == 0 ? "master"
+                    : features.get(turn - 1);
+                current = switchTo(repo, current, branch);
+                edit(repo, "commit " + c);
+                if (!side && branch.equals("master") && c >= _commits / 2) {
+                    repo.branch("side");
+                    side = true;
+                }
+                if (_shape.equals("merges") && c % _mergeEvery == 0
+                    && !branch.equals("master")) {
+                    current = switchTo(repo, current, "master");
+                    merge(repo, branch);
+                }
+            }
+            current = switchTo(repo, current, "master");
+            if (!side) {
+                repo.branch("side");
+            }
+            current = switchTo(repo, current, "side");
+            for (int c = 0; c < 3; c += 1) {
+                edit(repo, "side " + c);
+            }
+            switchTo(repo, current, "master");
+            repo.save();
+            return repo;
+        } finally {
+            Utils.collectMessages(messages);
+        }
+    }
+
+    /** Commit a new version of a random _editRatio of the files (at
+     * least one) with message MSG in REPO.
+     * @param repo repository.
+     * @param msg commit message.**/
+    void edit(Gitlet repo, String msg) {
+        int count = Math.max(1, (int) Math.round(_editRatio * _files));
+        TreeSet<String> chosen = new TreeSet<>();
+        while (chosen.size() < Math.min(count, _files)) {
+            chosen.add(path(_random.nextInt(_files)));
+        }
+        String[] paths = chosen.toArray(new String[0]);
+        for (String path : paths) {
+            File file = new File(path);
+            byte[] contents = Utils.readContents(file);
+            byte[] line = line();
+            int start = line.length * _random.nextInt(
+                Math.max(1, contents.length / line.length));
+            System.arraycopy(line, 0, contents, start,
+                    Math.min(line.length, contents.length - start));
+            Utils.writeContents(file, contents);
+        }
+        repo.add(paths);
+        repo.commit(msg);
+    }
+
+    /** Return the path of file I.
+     * @param i file number.
+     * @return working file path.**/
+    static String path(int i) {
+        return "w/d" + (i % 10) + "/f" + i + ".txt";
+    }
+
+    /** Remove the repository and working files from the working
+     * directory. **/
+    static void clean() {
+        delete(new File(".gitlet"));
+        delete(new File("w"));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s history of %d commits, %d files of %d "
+                + "bytes, edit ratio %s", _shape, _commits, _files,
+                _fileSize, _editRatio);
+    }
+
+    /** Check out BRANCH in REPO, where CURRENT is checked out.
+     * @param repo repository.
+     * @param current current branch.
+     * @param branch branch to check out.
+     * @return BRANCH.**/
+    private static String switchTo(Gitlet repo, String current,
+                                   String branch) {
+        if (!current.equals(branch)) {
+            repo.checkoutBranch(branch);
+        }
+        return branch;
+    }
+
+    /** Merge BRANCH into the current branch of REPO, if there is
+     * anything to merge.
+     * @param repo repository.
+     * @param branch branch name.**/
+    private static void merge(Gitlet repo, String branch) {
+        try {
+            repo.merge(branch);
+        } catch (GitletException excp) {
+            return;
+        }
+    }
+
+    /** Return _fileSize bytes of random text.
+     * @return file contents.**/
+    private byte[] text() {
+        byte[] result = new byte[_fileSize];
+        for (int i = 0; i < result.length; i += LINE) {
+            byte[] line = line();
+            System.arraycopy(line, 0, result, i,
+                    Math.min(LINE, result.length - i));
+        }
+        return result;
+    }
+
+    /** Return a random line of LINE bytes, newline included.
+     * @return line.**/
+    private byte[] line() {
+        byte[] result = new byte[LINE];
+        for (int i = 0; i < LINE - 1; i += 1) {
+            result[i] = (byte) ('a' + _random.nextInt(26));
+        }
+        result[LINE - 1] = '\n';
+        return result;
+    }
+
+    /** Return FILE after creating its parent directories.
+     * @param name file path.
+     * @return file.**/
+    private static File parentsMade(String name) {
+        File file = new File(name);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    /** Delete FILE and, if a directory, everything in it.
+     * @param file file or directory.**/
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Length of a line of file contents. **/
+    private static final int LINE = 64;
+
+    /** History shape: "linear", "branches" or "merges". **/
+    String _shape = "linear";
+    /** Number of commits, the first one included. **/
+    int _commits = 100;
+    /** Number of files. **/
+    int _files = 100;
+    /** Size of each file in bytes. **/
+    int _fileSize = 1000;
+    /** Fraction of the files each commit edits. **/
+    double _editRatio = 0.01;
+    /** Number of feature branches. **/
+    int _branches = 8;
+    /** Commits between merges into master. **/
+    int _mergeEvery = 10;
+    /** Random seed. **/
+    long _seed = 1;
+    /** Source of file contents and edits. **/
+    private Random _random;
+
+}
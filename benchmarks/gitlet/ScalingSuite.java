@@ -0,0 +1,248 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/** Times real gitlet commands, each a "java gitlet.Main" process, on
+ * generated repositories of growing size (see RepoGenerator). <p></p>
+ * For every shape and every scale COMMITSxFILESxSIZE, a repository is
+ * generated in its own directory under the working directory, and each
+ * command below is run _runs times. Commands that change the repository
+ * are followed by an untimed command that undoes the change, so every
+ * run starts from the same state: <p></p>
+ * status, log, global-log, find, checkout of a file at an abbreviated
+ * commit ID, add and commit of one changed file (undone with reset),
+ * checkout of branch side (and back), reset to the first commit (and
+ * back), and merge of side (undone with reset). <p></p>
+ * One JSON object per line is written for every command and scale,
+ * with the minimum, median and maximum wall time in milliseconds, and
+ * one for the generation of each repository. <p></p>
+ * Usage: java gitlet.ScalingSuite [--shapes=linear,branches,merges]
+ * [--scales=100x100x1000,1000x1000x1000] [--edit=RATIO] [--runs=N]
+ * [--out=FILE] [--keep]. The JVM running the suite must have gitlet
+ * and the benchmarks on its class path, which the gitlet processes
+ * are given as well.
+ * @author Kevin Moy**/
+
+class ScalingSuite {
+
+    /** Run the suite with options ARGS.
+     * @param args options; see the class comment.**/
+    public static void main(String... args) throws IOException {
+        ScalingSuite suite = new ScalingSuite();
+        for (String arg : args) {
+            suite.option(arg);
+        }
+        suite.run();
+    }
+
+    /** Set the option ARG, of the form --NAME=VALUE or --keep.
+     * @param arg command-line option.**/
+    void option(String arg) {
+        int eq = arg.indexOf('=');
+        String name = eq < 0 ? arg : arg.substring(0, eq);
+        String value = eq < 0 ? "" : arg.substring(eq + 1);
+        switch (name) {
+        case "--shapes":
+            _shapes = Arrays.asList(value.split(","));
+            break;
+        case "--scales":
+            _scales = new ArrayList<>();
+            for (String scale : value.split(",")) {
+                String[] sizes = scale.split("x");
+                if (sizes.length != 3) {
+                    throw new IllegalArgumentException("bad scale: "
+                        + scale);
+                }
+                _scales.add(new int[] {Integer.parseInt(sizes[0]),
+                    Integer.parseInt(sizes[1]), Integer.parseInt(sizes[2])});
+            }
+            break;
+        case "--edit":
+            _editRatio = value;
+            break;
+        case "--runs":
+            _runs = Math.max(1, Integer.parseInt(value));
+            break;
+        case "--out":
+            _out = value;
+            break;
+        case "--keep":
+            _keep = true;
+            break;
+        default:
+            throw new IllegalArgumentException("bad option: " + arg);
+        }
+    }
+
+    /** Generate every repository and time the commands in it. **/
+    void run() throws IOException {
+        PrintStream results = _out == null ? System.out
+            : new PrintStream(new FileOutputStream(_out), true,
+                    StandardCharsets.UTF_8);
+        for (String shape : _shapes) {
+            for (int[] scale : _scales) {
+                File dir = new File(String.format("scale-%s-%dx%dx%d",
+                        shape, scale[0], scale[1], scale[2]));
+                _dir = dir;
+                _context = String.format(Locale.ROOT,
+                        "\"shape\":\"%s\",\"commits\":%d,\"files\":%d,"
+                        + "\"size\":%d,\"edit\":%s", shape, scale[0],
+                        scale[1], scale[2], _editRatio);
+                delete(dir);
+                dir.mkdirs();
+                long start = System.nanoTime();
+                exec("gitlet.RepoGenerator", "--shape=" + shape,
+                     "--commits=" + scale[0], "--files=" + scale[1],
+                     "--size=" + scale[2], "--edit=" + _editRatio);
+                results.println(String.format(Locale.ROOT,
+                        "{%s,\"command\":\"generate\",\"ms\":%.1f}",
+                        _context, (System.nanoTime() - start) / 1e6));
+                timeCommands(results);
+                if (!_keep) {
+                    delete(dir);
+                }
+            }
+        }
+        if (results != System.out) {
+            results.close();
+        }
+    }
+
+    /** Time every command in the repository in _dir, printing the
+     * results to RESULTS.
+     * @param results output.**/
+    private void timeCommands(PrintStream results) {
+        String first = gitlet("find", "commit 0").trim();
+        String master = lastWord(gitlet("log").split("\n", 3)[1]);
+        String file = RepoGenerator.path(0);
+        String changed = RepoGenerator.path(1);
+        time(results, "status", null, "status");
+        time(results, "log", null, "log");
+        time(results, "global-log", null, "global-log");
+        time(results, "find", null, "find", "side 0");
+        time(results, "checkout-file", null, "checkout",
+             first.substring(0, 8), "--", file);
+        time(results, "add", null, "add", changed);
+        time(results, "commit", new String[] {"reset", master},
+             "commit", "scaling suite");
+        time(results, "checkout-branch", new String[] {"checkout",
+            "master"}, "checkout", "side");
+        time(results, "reset", new String[] {"reset", master},
+             "reset", first);
+        time(results, "merge", new String[] {"reset", master},
+             "merge", "side");
+    }
+
+    /** Run gitlet with ARGS _runs times, running gitlet with UNDO (if
+     * not null) after each, and print the timings as NAME to RESULTS.
+     * Before the add and commit commands, a tracked file is changed.
+     * @param results output.
+     * @param name command name in the results.
+     * @param undo arguments of the command that undoes ARGS, or null.
+     * @param args command and operands.**/
+    private void time(PrintStream results, String name, String[] undo,
+                      String... args) {
+        double[] ms = new double[_runs];
+        for (int i = 0; i < _runs; i += 1) {
+            if (args[0].equals("add") || args[0].equals("commit")) {
+                Utils.writeContents(new File(_dir, RepoGenerator.path(1)),
+                        "changed by run " + i + "\n");
+                if (args[0].equals("commit")) {
+                    gitlet("add", RepoGenerator.path(1));
+                }
+            }
+            long start = System.nanoTime();
+            gitlet(args);
+            ms[i] = (System.nanoTime() - start) / 1e6;
+            if (undo != null) {
+                gitlet(undo);
+            }
+        }
+        Arrays.sort(ms);
+        results.println(String.format(Locale.ROOT,
+                "{%s,\"command\":\"%s\",\"runs\":%d,\"min_ms\":%.1f,"
+                + "\"median_ms\":%.1f,\"max_ms\":%.1f}", _context, name,
+                _runs, ms[0], ms[_runs / 2], ms[_runs - 1]));
+    }
+
+    /** Run "java gitlet.Main ARGS" in _dir.
+     * @param args command and operands.
+     * @return its output.**/
+    private String gitlet(String... args) {
+        String[] command = new String[args.length + 1];
+        command[0] = "gitlet.Main";
+        System.arraycopy(args, 0, command, 1, args.length);
+        return exec(command);
+    }
+
+    /** Run the Java class and arguments ARGS in _dir, with the class
+     * path of this JVM.
+     * @param args main class and arguments.
+     * @return its output, which fails the suite if the process did.**/
+    private String exec(String... args) {
+        List<String> command = new ArrayList<>(List.of(
+            new File(System.getProperty("java.home"), "bin/java").getPath(),
+            "-cp", System.getProperty("java.class.path")));
+        command.addAll(Arrays.asList(args));
+        try {
+            Process process = new ProcessBuilder(command).directory(_dir)
+                .redirectErrorStream(true).start();
+            String output = new String(process.getInputStream()
+                .readAllBytes(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException(String.join(" ", args)
+                    + " failed:\n" + output);
+            }
+            return output;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return the last word of LINE.
+     * @param line text.
+     * @return last word.**/
+    private static String lastWord(String line) {
+        String[] words = line.trim().split(" ");
+        return words[words.length - 1];
+    }
+
+    /** Delete FILE and, if a directory, everything in it.
+     * @param file file or directory.**/
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** History shapes. **/
+    private List<String> _shapes = List.of("linear", "branches", "merges");
+    /** Scales, as {commits, files, file size}. **/
+    private List<int[]> _scales = new ArrayList<>(List.of(
+        new int[] {100, 100, 1000}, new int[] {1000, 1000, 1000}));
+    /** Edit ratio of the generated repositories. **/
+    private String _editRatio = "0.01";
+    /** Runs of each command. **/
+    private int _runs = 5;
+    /** Results file, or null for the standard output. **/
+    private String _out;
+    /** True iff the generated repositories are kept. **/
+    private boolean _keep;
+    /** Directory of the repository being timed. **/
+    private File _dir;
+    /** JSON members describing the repository being timed. **/
+    private String _context;
+
+}
@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reads repositories Java-serialized by early versions of gitlet. <p></p>
+ * The first version serialized the whole repository to .gitlet/repo and
+ * every commit, with the contents of all of its files, to
+ * .gitlet/commitLog/ID. The versions that followed, up to the gc
+ * command, kept its repository class unchanged (so its serialVersionUID
+ * too) but stored blob IDs where it kept blobs, and wrote trees. <p></p>
+ * Those classes had other fields or serialVersionUIDs than Gitlet,
+ * Commit and Blob have now, so their objects are read into stand-ins
+ * (see BaselineInput). The repository state becomes refs and an index.
+ * A repository of the first version, which has no trees, also has its
+ * objects converted: every file it holds is stored as a blob under the
+ * ID it already had, and every commit gets a tree and is stored again
+ * under its old ID. The old directories are renamed before anything is
+ * written, so a conversion that fails part way is simply run again.
+ * @author Kevin Moy**/
+
+class Baseline {
+
+    /** Not instantiable. **/
+    private Baseline() {
+    }
+
+    /** If STATE, the contents of .gitlet/repo in GITLETDIR, was written
+     * by an early version of gitlet, return that repository, with its
+     * refs and index not yet written, converting its objects first if it
+     * is one of the first version; otherwise return null.
+     * @param gitletDir the .gitlet directory.
+     * @param state contents of its repo file.
+     * @return repository, or null.**/
+    static Gitlet upgrade(File gitletDir, byte[] state) {
+        if (!Codec.isJavaSerialized(state)) {
+            return null;
+        }
+        OldGitlet old = (OldGitlet) read(state, true);
+        if (old == null) {
+            return null;
+        }
+        ObjectStore store = null;
+        if (!new File(gitletDir, "trees").isDirectory()
+            || new File(gitletDir, OLD_COMMITS).isDirectory()) {
+            store = convertObjects(gitletDir);
+        }
+        HashMap<String, String> staged = new HashMap<>();
+        for (Map.Entry<String, Object> e : old._stagingArea.entrySet()) {
+            if (e.getValue() instanceof OldBlob) {
+                staged.put(e.getKey(),
+                           writeBlob(store, (OldBlob) e.getValue()));
+            } else {
+                staged.put(e.getKey(), (String) e.getValue());
+            }
+        }
+        Gitlet repo = new Gitlet(new Refs(gitletDir), new Index(gitletDir));
+        repo.restore(old._head, old._branches, staged,
+                old._untracked == null ? new ArrayList<>() : old._untracked);
+        return repo;
+    }
+
+    /** Return the object of class EXPECTEDCLASS Java-serialized in BYTES
+     * by any version of gitlet.
+     * @param bytes serialized object.
+     * @param expectedClass class of the object.
+     * @return the object.**/
+    static <T> T deserialize(byte[] bytes, Class<T> expectedClass) {
+        try {
+            return expectedClass.cast(read(bytes, false));
+        } catch (ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Delete what is left of the first version's layout in GITLETDIR,
+     * once the repository converted from it has been saved.
+     * @param gitletDir the .gitlet directory.**/
+    static void removeLeftovers(File gitletDir) {
+        for (String name : new String[] {OLD_COMMITS, OLD_BLOBS}) {
+            File dir = new File(gitletDir, name);
+            List<String> files = Utils.plainFilenamesIn(dir);
+            if (files != null) {
+                for (String file : files) {
+                    new File(dir, file).delete();
+                }
+            }
+            dir.delete();
+        }
+        new File(gitletDir, "untracked").delete();
+        new File(gitletDir, "merge").delete();
+    }
+
+    /** Store every commit of the first version's repository in GITLETDIR,
+     * and its files, in a new object store.
+     * @param gitletDir the .gitlet directory.
+     * @return the object store.**/
+    private static ObjectStore convertObjects(File gitletDir) {
+        File commits = new File(gitletDir, OLD_COMMITS);
+        moveAside(new File(gitletDir, "commitLog"), commits);
+        moveAside(new File(gitletDir, "stagingArea"),
+                  new File(gitletDir, OLD_BLOBS));
+        ObjectStore store = new ObjectStore(gitletDir);
+        store.createDirectories();
+        List<String> ids = Utils.plainFilenamesIn(commits);
+        if (ids != null) {
+            for (String id : ids) {
+                byte[] commit = Utils.readContents(new File(commits, id));
+                writeCommit(store, id, deserialize(commit, OldCommit.class));
+            }
+        }
+        return store;
+    }
+
+    /** Store old commit COMMIT, with ID, and its files in STORE.
+     * @param store object store.
+     * @param id commit ID.
+     * @param commit commit read from the first version's commitLog.**/
+    private static void writeCommit(ObjectStore store, String id,
+                                    OldCommit commit) {
+        HashMap<String, String> files = new HashMap<>();
+        if (commit._fileToBlob != null) {
+            for (String name : commit._fileToBlob.keySet()) {
+                files.put(name,
+                          writeBlob(store, commit._fileToBlob.get(name)));
+            }
+        }
+        String[] parents = commit._parentCommits == null
+            ? new String[0] : commit._parentCommits;
+        String parent = commit._parentCommit == null
+            ? "" : commit._parentCommit;
+        Tree tree = new Tree(files);
+        Commit converted = new Commit(id, commit._message, parent, parents,
+                tree.getID(), commit._timeStamp);
+        converted.setStore(store);
+        store.writeTree(tree);
+        store.writeCommit(converted);
+    }
+
+    /** Store the contents of old blob BLOB in STORE under its ID.
+     * @param store object store.
+     * @param blob blob read from the first version's objects.
+     * @return its ID.**/
+    private static String writeBlob(ObjectStore store, OldBlob blob) {
+        store.writeBlob(blob._hashed, blob._fileContents);
+        return blob._hashed;
+    }
+
+    /** Rename directory DIR to ASIDE, unless an earlier conversion
+     * already did.
+     * @param dir directory of the first version.
+     * @param aside its new name.**/
+    private static void moveAside(File dir, File aside) {
+        if (aside.isDirectory()) {
+            return;
+        }
+        if (!dir.isDirectory()) {
+            aside.mkdir();
+        } else if (!dir.renameTo(aside)) {
+            throw new IllegalArgumentException("cannot rename " + dir);
+        }
+    }
+
+    /** Return the object serialized in BYTES. If TOP, return null unless
+     * that object is the repository of an early version.
+     * @param bytes serialized object.
+     * @param top whether BYTES must hold an OldGitlet.
+     * @return object, or null.**/
+    private static Object read(byte[] bytes, boolean top) {
+        try (ObjectInputStream in = new BaselineInput(bytes, top)) {
+            return in.readObject();
+        } catch (NotBaseline excp) {
+            return null;
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the classes of early versions as their stand-ins. A stream
+     * names the class and serialVersionUID of each object before its
+     * fields; those in STAND_INS are answered with the stand-in's own
+     * description, which lists the same fields, so the fields are read
+     * into the stand-in. **/
+    private static class BaselineInput extends ObjectInputStream {
+
+        /** A stream reading BYTES. If TOP, its first class must be the
+         * early versions' Gitlet.
+         * @param bytes serialized object.
+         * @param top whether to insist on an OldGitlet.**/
+        BaselineInput(byte[] bytes, boolean top) throws IOException {
+            super(new ByteArrayInputStream(bytes));
+            _top = top;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            Class<?> standIn = STAND_INS.get(desc.getName() + " "
+                                             + desc.getSerialVersionUID());
+            if (_top && standIn != OldGitlet.class) {
+                throw new NotBaseline();
+            }
+            _top = false;
+            return standIn == null ? desc : ObjectStreamClass.lookup(standIn);
+        }
+
+        /** True until the first class has been checked. **/
+        private boolean _top;
+    }
+
+    /** Thrown when a repository was not written by an early version; an
+     * IOException so that it leaves ObjectInputStream unchanged. **/
+    private static class NotBaseline extends IOException {
+        /** Serialization version. **/
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** The early versions' Gitlet: the whole repository state. **/
+    private static class OldGitlet implements Serializable {
+        /** Files staged for addition: name -> OldBlob in the first
+         * version, name -> blob ID after it. **/
+        private HashMap<String, Object> _stagingArea;
+        /** HEAD branch name. **/
+        private String _head;
+        /** Branch name -> commit ID. **/
+        private HashMap<String, String> _branches;
+        /** Unused. **/
+        private String _currentbranch;
+        /** Unused. **/
+        private ArrayList<String> _removed;
+        /** Files staged for removal. **/
+        private ArrayList<String> _untracked;
+        /** Unused. **/
+        private HashMap<String, String> _unstagedMods;
+        /** Unused. **/
+        private int _numEdits;
+        /** The early versions' serialVersionUID for Gitlet. **/
+        private static final long serialVersionUID = -974597042328338632L;
+    }
+
+    /** The first version's Commit, holding all of its files. **/
+    private static class OldCommit implements Serializable {
+        /** Commit message. **/
+        private String _message;
+        /** File name -> its blob, contents and all. **/
+        private HashMap<String, OldBlob> _fileToBlob;
+        /** Unused. **/
+        private String headName;
+        /** Unused. **/
+        private String branchName;
+        /** First parent ID, or "". **/
+        private String _parentCommit;
+        /** All parent IDs. **/
+        private String[] _parentCommits;
+        /** Formatted commit time. **/
+        private String _timeStamp;
+        /** Commit ID. **/
+        private String _hashed;
+        /** The first version's serialVersionUID for Commit. **/
+        private static final long serialVersionUID = -2514814004709288405L;
+    }
+
+    /** The first version's Blob, holding the contents of its file. **/
+    private static class OldBlob implements Serializable {
+        /** File name. **/
+        private String _fileName;
+        /** File contents. **/
+        private byte[] _fileContents;
+        /** Unused. **/
+        private String _stringEquivalent;
+        /** Blob ID. **/
+        private String _hashed;
+        /** The first version's serialVersionUID for Blob. **/
+        private static final long serialVersionUID = -8193692545519686311L;
+    }
+
+    /** Class read in place of each early version's class, keyed by that
+     * class's name and serialVersionUID. The first commits with trees
+     * had the fields Commit has now, under another serialVersionUID. **/
+    private static final Map<String, Class<?>> STAND_INS = Map.of(
+        "gitlet.Gitlet -974597042328338632", OldGitlet.class,
+        "gitlet.Commit -2514814004709288405", OldCommit.class,
+        "gitlet.Blob -8193692545519686311", OldBlob.class,
+        "gitlet.Commit 3220403888423672776", Commit.class);
+
+    /** The first version's commitLog, once moved aside. **/
+    private static final String OLD_COMMITS = "baseline-commitLog";
+    /** The first version's stagingArea, once moved aside. **/
+    private static final String OLD_BLOBS = "baseline-stagingArea";
+
+}
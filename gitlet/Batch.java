@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs a script of gitlet commands in one process. <p></p>
+ * "gitlet batch [--checkpoint=N] [FILE]" reads commands from FILE, or
+ * from the standard input if FILE is absent or "-", one per line, with
+ * operands split as a shell would (see split). Blank lines and lines
+ * starting with '#' are skipped. Every command runs against the same
+ * Gitlet, so refs, staging area and object caches are read once. The
+ * refs and index are written after every N commands, and always at the
+ * end; N = 0 (the default) writes them only at the end. <p></p>
+ * A command that fails with an error message has its changes to the
+ * refs and staging area undone, as if it had never been run, and the
+ * batch goes on, as it does after a command that fails unexpectedly
+ * (whose stack trace is printed).
+ * @author Kevin Moy**/
+
+class Batch {
+
+    /** Run the batch command with operands OPS.
+     * @param ops operands of batch.
+     * @return true iff no command failed unexpectedly.**/
+    static boolean run(String[] ops) {
+        int every = 0;
+        String path = "-";
+        for (String op : ops) {
+            if (op.startsWith("--checkpoint=")) {
+                try {
+                    every = Integer.parseInt(op.substring(13));
+                } catch (NumberFormatException excp) {
+                    every = -1;
+                }
+            } else if (path.equals("-")) {
+                path = op;
+            } else {
+                every = -1;
+            }
+        }
+        if (every < 0) {
+            Utils.message("Incorrect operands");
+            throw new GitletException();
+        }
+        try (InputStream input = path.equals("-") ? System.in
+                : new FileInputStream(path)) {
+            return new Batch(every).run(new BufferedReader(
+                new InputStreamReader(input, StandardCharsets.UTF_8)));
+        } catch (IOException excp) {
+            Utils.message("File does not exist.");
+            throw new GitletException();
+        }
+    }
+
+    /** A batch writing its state after every EVERY commands.
+     * @param every checkpoint interval, or 0 for only at the end.**/
+    Batch(int every) {
+        _every = every;
+    }
+
+    /** Run every command read from SCRIPT.
+     * @param script commands, one per line.
+     * @return true iff no command failed unexpectedly.**/
+    boolean run(BufferedReader script) throws IOException {
+        boolean ok = true;
+        int unsaved = 0;
+        for (String line = script.readLine(); line != null;
+             line = script.readLine()) {
+            List<String> args = split(line);
+            if (args.isEmpty() || args.get(0).startsWith("#")) {
+                continue;
+            }
+            ok &= runCommand(args.toArray(new String[0]));
+            unsaved += 1;
+            if (_repo != null && _every > 0 && unsaved >= _every) {
+                _repo.save();
+                unsaved = 0;
+            }
+        }
+        if (_repo != null) {
+            _repo.save();
+        }
+        return ok;
+    }
+
+    /** Run the command ARGS, undoing its changes if it fails.
+     * @param args command and operands.
+     * @return false iff the command failed unexpectedly.**/
+    private boolean runCommand(String[] args) {
+        if (_repo != null) {
+            _repo.checkpoint();
+        }
+        try {
+            if (_repo == null && Main.repoExists()) {
+                _repo = Main.lastRepoState();
+                _repo.checkpoint();
+            }
+            if (_repo == null && args[0].equals("init")) {
+                _repo = new Gitlet();
+                _repo.save();
+            } else if (_repo == null) {
+                Utils.message("Not in an initialized Gitlet directory.");
+                throw new GitletException();
+            } else {
+                Main.runIn(_repo, args);
+            }
+            return true;
+        } catch (GitletException excp) {
+            rollback();
+            return true;
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            rollback();
+            return false;
+        }
+    }
+
+    /** Undo the changes of the command that just failed. **/
+    private void rollback() {
+        if (_repo != null) {
+            _repo.rollback();
+        }
+    }
+
+    /** Return the words of LINE, split at unquoted whitespace. Single
+     * quotes keep everything up to the next single quote; double quotes
+     * do the same, except that a backslash in them escapes the next
+     * character, as does a backslash outside quotes.
+     * @param line script line.
+     * @return command and operands.**/
+    static List<String> split(String line) {
+        ArrayList<String> result = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (inWord) {
+                    result.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+                continue;
+            }
+            inWord = true;
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            } else {
+                word.append(c);
+            }
+        }
+        if (inWord) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+
+    /** Commands between writes of the refs and index, or 0. **/
+    private final int _every;
+    /** Repository the commands run in, or null until there is one. **/
+    private Gitlet _repo;
+
+}
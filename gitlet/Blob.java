@@ -1,51 +1,174 @@
 package gitlet;
 
-import java.io.Serializable;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 
 
-/** Class for representing file Contents.
+/** Class for representing file Contents. <p></p>
+ * A blob only remembers its file; the contents are hashed by streaming
+ * the file through a fixed-size buffer and stored by ObjectStore the
+ * same way, so files of any size and any contents can be added. A blob
+ * whose file changed between creating the blob and storing it is not
+ * stored.
  * @author Kevin Moy**/
 
 public class Blob implements Serializable {
 
+    /** Size of the buffers used to stream file contents. **/
+    static final int BUFFER_SIZE = 1 << 16;
+
     /** Create a Blob given a filename.
      * @param name file name.**/
     public Blob(String name) {
-        File f = new File(name);
-        this._fileContents = Utils.readContents(f);
-        this._stringEquivalent = Utils.readContentsAsString(f);
         this._fileName = name;
+        this._stat = Index.Stat.of(getFile());
         this._hashed = hashMe();
     }
 
     /** Convert Blob to hashcode--
-     * i.e. use SHA1 on accumulation container of blob features.
+     * i.e. use SHA1 on accumulation container of blob features:
+     * the file name, the file contents, and the contents once more as
+     * decoded to a String and encoded back to UTF-8 (which replaces
+     * malformed bytes). Files that fit in one buffer are read once;
+     * larger ones are streamed twice, never held whole, and the second
+     * pass skips the UTF-8 round trip if the first found only ASCII.
      * @return SHA-1 unique ID.**/
     public String hashMe() {
-        List<Object> blobStuff = new ArrayList<>();
-        blobStuff.add(_fileName);
-        blobStuff.add(_fileContents);
-        blobStuff.add(_stringEquivalent);
-        return Utils.sha1(blobStuff);
+        MessageDigest md = Utils.newSha1();
+        Utils.sha1Update(md, _fileName);
+        File file = getFile();
+        byte[] buf = new byte[(int) Math.min(BUFFER_SIZE, file.length() + 1)];
+        boolean ascii = true;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n = in.readNBytes(buf, 0, buf.length);
+            if (n < buf.length) {
+                md.update(buf, 0, n);
+                if (isAscii(buf, n)) {
+                    md.update(buf, 0, n);
+                } else {
+                    md.update(new String(buf, 0, n, StandardCharsets.UTF_8)
+                              .getBytes(StandardCharsets.UTF_8));
+                }
+                return Utils.toHex(md.digest());
+            }
+            for (; n > 0; n = in.readNBytes(buf, 0, buf.length)) {
+                md.update(buf, 0, n);
+                ascii = ascii && isAscii(buf, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            if (ascii) {
+                for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+                    md.update(buf, 0, n);
+                }
+            } else {
+                updateRoundTrip(md, in);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(md.digest());
+    }
+
+    /** Return true iff the first N bytes of BUF are all ASCII, and so
+     * are unchanged by a UTF-8 round trip.
+     * @param buf bytes.
+     * @param n number of bytes to check.
+     * @return whether they are ASCII.**/
+    private static boolean isAscii(byte[] buf, int n) {
+        for (int i = 0; i < n; i += 1) {
+            if (buf[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Update MD with the contents of IN decoded from UTF-8 and encoded
+     * back, the bytes of new String(contents, UTF_8).getBytes(UTF_8),
+     * without reading all of IN at once.
+     * @param md digest to update.
+     * @param in contents.**/
+    static void updateRoundTrip(MessageDigest md, InputStream in)
+        throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE + 1);
+        ByteBuffer out = ByteBuffer.allocate(3 * (BUFFER_SIZE + 1));
+        boolean eof = false;
+        while (!eof) {
+            int n = in.read(bytes.array(), bytes.position(),
+                    bytes.remaining());
+            if (n < 0) {
+                eof = true;
+            } else {
+                bytes.position(bytes.position() + n);
+            }
+            bytes.flip();
+            decoder.decode(bytes, chars, eof);
+            bytes.compact();
+            if (eof) {
+                decoder.flush(chars);
+            }
+            chars.flip();
+            encoder.encode(chars, out, eof);
+            if (eof) {
+                encoder.flush(out);
+            }
+            chars.compact();
+            md.update(out.array(), 0, out.position());
+            out.clear();
+        }
     }
+
     /** Getter method for blob name.
      * @return name of file.**/
     public String getName() {
         return _fileName;
     }
-    /** Getter method for contents in byte-array form.
+
+    /** Getter method for the file holding the contents.
+     * @return file.**/
+    File getFile() {
+        return new File(_fileName);
+    }
+
+    /** Getter method for contents in byte-array form. Reads the whole
+     * file, so only for small files.
      * @return byte form of blob.**/
     public byte[] getByted() {
-        return _fileContents;
+        return Utils.readContents(getFile());
     }
-    /** returns string form of blob object.
+    /** returns string form of blob object. Reads the whole file, so
+     * only for small files.
      * @return string form**/
     public String convertToString() {
-        return _stringEquivalent;
+        return Utils.readContentsAsString(getFile());
+    }
+    /** Getter method for the metadata of the file when it was hashed,
+     * which ObjectStore checks are unchanged once it stored the blob.
+     * @return file metadata, or null if it was not a plain file.**/
+    Index.Stat getStat() {
+        return _stat;
     }
+
     /**Getter method for unique SHA-1 ID.
      * @return unique SHA-1 ID.**/
     public String getID() {
@@ -54,11 +177,9 @@ public class Blob implements Serializable {
 
     /**File Name. **/
     private String _fileName;
-    /** Holds byte array version of Blob.**/
-    private byte[] _fileContents;
-    /** blob string equivalent. **/
-    private String _stringEquivalent;
     /** Hashed Blob. **/
     private String _hashed;
+    /** Metadata of the file when it was hashed. **/
+    private transient Index.Stat _stat;
 
 }
@@ -0,0 +1,227 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Stages many files with one add. <p></p>
+ * The paths given to add are expanded first: a directory stands for the
+ * plain files in it and its subdirectories, and a path that names no
+ * file but contains glob characters is matched against the plain files
+ * of its directory. The
+ * files are then split into ranges of at most CHUNK_SIZE that are hashed,
+ * and stored if they differ from the head commit, in parallel on the
+ * common fork-join pool. The index is only updated once all files are
+ * done, by the calling thread, so a failed add stages nothing.
+ * @author Kevin Moy**/
+
+class BulkAdd {
+
+    /** Number of files hashed by one fork-join task. **/
+    static final int CHUNK_SIZE = 16;
+
+    /** Hash and store the files NAMES against the files HEAD of the head
+     * commit, using the stat cache of INDEX.
+     * @param names working file names.
+     * @param head file name -> blob ID map of the head commit, for at
+     *             least NAMES.
+     * @param index staging area and stat cache.
+     * @param store object store for the new blobs.**/
+    BulkAdd(List<String> names, Map<String, String> head, Index index,
+            ObjectStore store) {
+        _names = names.toArray(new String[names.size()]);
+        _head = head;
+        _index = index;
+        _store = store;
+        _ids = new String[_names.length];
+        _stats = new Index.Stat[_names.length];
+        ForkJoinPool.commonPool().invoke(new Chunk(0, _names.length));
+    }
+
+    /** Stage every file in the index: as an addition if it differs from
+     * the head commit, else by dropping any staged version. Either way,
+     * a mark for removal is dropped. **/
+    void apply() {
+        for (int i = 0; i < _names.length; i += 1) {
+            String name = _names[i];
+            if (_ids[i].equals(_head.get(name))) {
+                _index.unstage(name);
+            } else {
+                _index.stage(name, _ids[i]);
+            }
+            _index.unstageRemoval(name);
+            _index.record(name, _stats[i], _ids[i]);
+        }
+    }
+
+    /** Return the working files named by PATHS, each a file, a directory
+     * or a glob pattern, sorted and without duplicates. Throws a
+     * GitletException if any path matches nothing.
+     * @param paths operands of add.
+     * @return file names.**/
+    static List<String> expand(List<String> paths) {
+        return expand(null, paths);
+    }
+
+    /** Return the files named by PATHS as expand(PATHS) does, but with
+     * PATHS and the result relative to directory BASE.
+     * @param base directory the paths are relative to, or null for the
+     *             working directory.
+     * @param paths operands of add.
+     * @return file names.**/
+    static List<String> expand(File base, List<String> paths) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String operand : paths) {
+            String path = normalize(operand);
+            File file = resolve(base, path);
+            List<String> matches;
+            if (path.equals(".gitlet") || path.startsWith(".gitlet/")
+                || path.equals("..") || path.startsWith("../")) {
+                matches = List.of();
+            } else if (file.isFile()) {
+                matches = List.of(path);
+            } else if (file.isDirectory()) {
+                matches = new ArrayList<>();
+                String prefix = path.equals(".") ? "" : path + "/";
+                for (String name : Utils.plainFilesUnder(file)) {
+                    matches.add(prefix + name);
+                }
+            } else if (isGlob(path)) {
+                int slash = path.lastIndexOf('/');
+                matches = filesIn(base, slash < 0 ? ""
+                        : path.substring(0, slash),
+                        FileSystems.getDefault().getPathMatcher(
+                            "glob:" + path.substring(slash + 1)));
+            } else {
+                matches = List.of();
+            }
+            if (matches.isEmpty()) {
+                Utils.message("File does not exist.");
+                throw new GitletException();
+            }
+            result.addAll(matches);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the file at PATH relative to BASE.
+     * @param base directory, or null for the working directory.
+     * @param path relative path.
+     * @return file.**/
+    private static File resolve(File base, String path) {
+        return base == null ? new File(path) : new File(base, path);
+    }
+
+    /** Return PATH relative to the working directory without redundant
+     * components, with '/' between components, or "." for the working
+     * directory itself.
+     * @param path operand of add.
+     * @return normalized path.**/
+    private static String normalize(String path) {
+        String result = Paths.get(path).normalize().toString()
+            .replace(File.separatorChar, '/');
+        return result.isEmpty() ? "." : result;
+    }
+
+    /** Return the names of the plain files in directory DIR, relative to
+     * BASE, that MATCHER accepts, as paths relative to BASE.
+     * @param base directory DIR is relative to, or null for the working
+     *             directory.
+     * @param dir relative directory path, or "" for BASE itself.
+     * @param matcher file name filter.
+     * @return file names.**/
+    private static List<String> filesIn(File base, String dir,
+                                        PathMatcher matcher) {
+        ArrayList<String> result = new ArrayList<>();
+        List<String> names = Utils.plainFilenamesIn(
+            resolve(base, dir.isEmpty() ? "." : dir));
+        for (String name : names == null ? List.<String>of() : names) {
+            if (matcher.matches(Paths.get(name))) {
+                result.add(dir.isEmpty() ? name : dir + "/" + name);
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff PATH contains glob characters.
+     * @param path operand of add.
+     * @return whether PATH is a pattern.**/
+    private static boolean isGlob(String path) {
+        for (char c : path.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Hash file I, reusing the cached ID if the index vouches for its
+     * metadata, and store its contents if they differ from the head
+     * commit's.
+     * @param i position of the file.**/
+    private void hash(int i) {
+        String name = _names[i];
+        File f = new File(name);
+        _stats[i] = Index.Stat.of(f);
+        String id = _index.cachedId(name, _stats[i]);
+        if (id == null) {
+            Blob blob = new Blob(name);
+            id = blob.getID();
+            if (!id.equals(_head.get(name))) {
+                _store.writeBlob(blob);
+            }
+        }
+        _ids[i] = id;
+    }
+
+    /** Hashes the files from position LO up to HI, splitting the range
+     * until it is at most CHUNK_SIZE long. **/
+    private class Chunk extends RecursiveAction {
+
+        /** Hash files LO (inclusive) to HI (exclusive).
+         * @param lo first position.
+         * @param hi end position.**/
+        Chunk(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= CHUNK_SIZE) {
+                for (int i = _lo; i < _hi; i += 1) {
+                    hash(i);
+                }
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Chunk(_lo, mid), new Chunk(mid, _hi));
+        }
+
+        /** First position. **/
+        private final int _lo;
+        /** End position. **/
+        private final int _hi;
+    }
+
+    /** Files to add, sorted. **/
+    private String[] _names;
+    /** Files of the head commit. **/
+    private Map<String, String> _head;
+    /** Staging area and stat cache. **/
+    private Index _index;
+    /** Store for new blobs. **/
+    private ObjectStore _store;
+    /** Blob ID of each of _names. **/
+    private String[] _ids;
+    /** Metadata of each of _names. **/
+    private Index.Stat[] _stats;
+
+}
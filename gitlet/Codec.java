@@ -0,0 +1,300 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Compact binary encoding of commits, trees and the index, used
+ * instead of Java serialization. <p></p>
+ * Every encoding starts with a kind byte (COMMIT, TREE or INDEX) and a
+ * version byte, followed by the fields in a fixed order. Strings are
+ * a varint byte length and UTF-8 bytes, SHA-1 IDs are their 20 binary
+ * bytes, and lists and maps are a varint count followed by their
+ * elements (maps in sorted key order). Bytes
+ * that start with the Java serialization magic number are objects
+ * written by older versions of gitlet and are still decoded, as is
+ * the single REPO state file those versions kept.
+ * @author Kevin Moy**/
+
+class Codec {
+
+    /** Kind byte of an encoded commit. **/
+    static final byte COMMIT = 'C';
+    /** Kind byte of an encoded tree. **/
+    static final byte TREE = 'T';
+    /** Kind byte of the repository state written by older versions. **/
+    static final byte REPO = 'R';
+    /** Kind byte of an encoded index. **/
+    static final byte INDEX = 'I';
+    /** Current encoding version. Version 2 adds the stat cache to the
+     * index, and version 3 the subdirectories of trees; commits are
+     * unchanged. **/
+    static final byte VERSION = 3;
+    /** First two bytes of every Java serialization stream. **/
+    static final int JAVA_MAGIC = 0xACED;
+
+    /** Return the encoding of COMMIT.
+     * @param commit commit to encode.
+     * @return encoded commit.**/
+    static byte[] encode(Commit commit) {
+        Output out = new Output(COMMIT);
+        out.writeString(commit.getMsg());
+        out.writeId(commit.getTreeID());
+        out.writeString(commit.getTimestamp());
+        out.writeIds(Arrays.asList(commit.getParents()));
+        return out.toByteArray();
+    }
+
+    /** Return the commit with ID ID encoded in BYTES. IDs are not
+     * stored in the encoding, since the object store always knows them.
+     * @param bytes encode(commit), or a Java-serialized commit.
+     * @param id full commit ID.
+     * @return decoded commit.**/
+    static Commit decodeCommit(byte[] bytes, String id) {
+        if (isJavaSerialized(bytes)) {
+            return Baseline.deserialize(bytes, Commit.class);
+        }
+        Input in = new Input(bytes, COMMIT);
+        String msg = in.readString();
+        String tree = in.readId();
+        String timestamp = in.readString();
+        String[] parents = in.readIds().toArray(new String[0]);
+        String parent = parents.length == 0 ? "" : parents[0];
+        return new Commit(id, msg, parent, parents, tree, timestamp);
+    }
+
+    /** Return the encoding of TREE: its own files and the IDs of its
+     * subtrees, which are encoded separately.
+     * @param tree tree to encode.
+     * @return encoded tree.**/
+    static byte[] encode(Tree tree) {
+        Output out = new Output(TREE);
+        out.writeIdMap(tree.files());
+        out.writeIdMap(tree.dirs());
+        return out.toByteArray();
+    }
+
+    /** Return the tree with ID ID encoded in BYTES.
+     * @param bytes encode(tree), or a Java-serialized tree.
+     * @param id tree ID.
+     * @return decoded tree.**/
+    static Tree decodeTree(byte[] bytes, String id) {
+        if (isJavaSerialized(bytes)) {
+            return Baseline.deserialize(bytes, Tree.class);
+        }
+        Input in = new Input(bytes, TREE);
+        HashMap<String, String> files = in.readIdMap();
+        HashMap<String, String> dirs =
+            in.version() < 3 ? new HashMap<>() : in.readIdMap();
+        return new Tree(files, dirs, id);
+    }
+
+    /** Return the repository whose state is encoded in BYTES, with its
+     * refs and index not yet written.
+     * @param bytes repository state of kind REPO, or a Java-serialized
+     *              repo.
+     * @return decoded repository.**/
+    static Gitlet decodeRepo(byte[] bytes) {
+        if (isJavaSerialized(bytes)) {
+            return Baseline.deserialize(bytes, Gitlet.class);
+        }
+        return Gitlet.decode(new Input(bytes, REPO));
+    }
+
+    /** Return true iff BYTES is a Java serialization stream.
+     * @param bytes encoded object.
+     * @return whether BYTES starts with JAVA_MAGIC.**/
+    static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length >= 2
+            && ((bytes[0] & 0xff) << 8 | (bytes[1] & 0xff)) == JAVA_MAGIC;
+    }
+
+    /** Builds one encoding. **/
+    static class Output {
+
+        /** Start an encoding of kind KIND.
+         * @param kind kind byte.**/
+        Output(byte kind) {
+            _out = new ByteArrayOutputStream();
+            _out.write(kind);
+            _out.write(VERSION);
+        }
+
+        /** Write VALUE as a varint.
+         * @param value non-negative value.**/
+        void writeVarint(long value) {
+            Delta.writeVarint(_out, value);
+        }
+
+        /** Write string S.
+         * @param s string.**/
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            _out.write(bytes, 0, bytes.length);
+        }
+
+        /** Write the list of strings L.
+         * @param l strings.**/
+        void writeStrings(List<String> l) {
+            writeVarint(l.size());
+            for (String s : l) {
+                writeString(s);
+            }
+        }
+
+        /** Write the SHA-1 ID ID.
+         * @param id hex ID.**/
+        void writeId(String id) {
+            _out.write(CommitGraph.toBinary(id), 0, CommitGraph.ID_BYTES);
+        }
+
+        /** Write the list of SHA-1 IDs L.
+         * @param l hex IDs.**/
+        void writeIds(List<String> l) {
+            writeVarint(l.size());
+            for (String id : l) {
+                writeId(id);
+            }
+        }
+
+        /** Write the map M from strings to SHA-1 IDs, in sorted key order.
+         * @param m map.**/
+        void writeIdMap(Map<String, String> m) {
+            writeMap(m, true);
+        }
+
+        /** Write the map M in sorted key order, with values that are
+         * SHA-1 IDs iff IDS.
+         * @param m map.
+         * @param ids whether the values are IDs.**/
+        private void writeMap(Map<String, String> m, boolean ids) {
+            String[] keys = m.keySet().toArray(new String[0]);
+            Arrays.sort(keys);
+            writeVarint(keys.length);
+            for (String key : keys) {
+                writeString(key);
+                if (ids) {
+                    writeId(m.get(key));
+                } else {
+                    writeString(m.get(key));
+                }
+            }
+        }
+
+        /** Return the encoding so far.
+         * @return encoded bytes.**/
+        byte[] toByteArray() {
+            return _out.toByteArray();
+        }
+
+        /** Encoded bytes. **/
+        private ByteArrayOutputStream _out;
+    }
+
+    /** Reads one encoding. **/
+    static class Input {
+
+        /** Start reading BYTES, which must be an encoding of kind KIND
+         * in a version this code understands.
+         * @param bytes encoded bytes.
+         * @param kind expected kind byte.**/
+        Input(byte[] bytes, byte kind) {
+            _in = ByteBuffer.wrap(bytes);
+            if (bytes.length < 2 || _in.get() != kind) {
+                throw new IllegalArgumentException("wrong kind of object");
+            }
+            _version = _in.get();
+            if (_version > VERSION) {
+                throw new IllegalArgumentException("object written by a "
+                        + "newer version of gitlet");
+            }
+        }
+
+        /** Return the version the encoding was written in.
+         * @return encoding version.**/
+        int version() {
+            return _version;
+        }
+
+        /** Return the next varint.
+         * @return value.**/
+        long readVarint() {
+            return Delta.readVarint(_in);
+        }
+
+        /** Return the next string.
+         * @return string.**/
+        String readString() {
+            byte[] bytes = new byte[(int) readVarint()];
+            _in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Return the next list of strings.
+         * @return strings.**/
+        ArrayList<String> readStrings() {
+            int n = (int) readVarint();
+            ArrayList<String> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i += 1) {
+                result.add(readString());
+            }
+            return result;
+        }
+
+        /** Return the next SHA-1 ID.
+         * @return hex ID.**/
+        String readId() {
+            String id = CommitGraph.toHex(_in.array(), _in.position());
+            _in.position(_in.position() + CommitGraph.ID_BYTES);
+            return id;
+        }
+
+        /** Return the next list of SHA-1 IDs.
+         * @return hex IDs.**/
+        ArrayList<String> readIds() {
+            int n = (int) readVarint();
+            ArrayList<String> result = new ArrayList<>(n);
+            for (int i = 0; i < n; i += 1) {
+                result.add(readId());
+            }
+            return result;
+        }
+
+        /** Return the next string map.
+         * @return map.**/
+        HashMap<String, String> readMap() {
+            return readMap(false);
+        }
+
+        /** Return the next map from strings to SHA-1 IDs.
+         * @return map.**/
+        HashMap<String, String> readIdMap() {
+            return readMap(true);
+        }
+
+        /** Return the next map, whose values are SHA-1 IDs iff IDS.
+         * @param ids whether the values are IDs.
+         * @return map.**/
+        private HashMap<String, String> readMap(boolean ids) {
+            int n = (int) readVarint();
+            HashMap<String, String> result = new HashMap<>();
+            for (int i = 0; i < n; i += 1) {
+                String key = readString();
+                result.put(key, ids ? readId() : readString());
+            }
+            return result;
+        }
+
+        /** Bytes being read. **/
+        private ByteBuffer _in;
+        /** Version of the encoding. **/
+        private int _version;
+    }
+
+}
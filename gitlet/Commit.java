@@ -3,6 +3,7 @@ package gitlet;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Date;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
 
@@ -17,7 +18,8 @@ public class Commit implements Serializable {
         this._message = "initial commit";
         this._parentCommit = "";
         this._parentCommits = new String[]{};
-        this._fileToBlob = new HashMap<>();
+        this._snapshot = new Tree(null);
+        this._tree = _snapshot.getID();
         this._timeStamp = "Thu Jan 1 00:00:00 1970 -0800";
         this._hashed = hashMe();
     }
@@ -28,15 +30,16 @@ public class Commit implements Serializable {
 
     /** Commit with essential info: Message,
      * string-converted parent commit,
-     * hashmap mapping hash filenames to blobs.
+     * hashmap mapping filenames to blob IDs.
      * @param msg commit message
      * @param parent commit parent.
      * @param fileMap commit file snapshot.**/
-    public Commit(String msg, String parent, HashMap<String, Blob> fileMap) {
+    public Commit(String msg, String parent, HashMap<String, String> fileMap) {
         this._message = msg;
         this._parentCommit = parent;
         this._parentCommits = new String[]{parent};
-        this._fileToBlob = fileMap;
+        this._snapshot = new Tree(fileMap);
+        this._tree = _snapshot.getID();
         Date date = new Date();
         this._timeStamp = new SimpleDateFormat("EEE MMM d "
                 + "HH:mm:ss yyyy").format(date) + " -0800";
@@ -47,25 +50,58 @@ public class Commit implements Serializable {
      * @param parents list of commit parents.
      * @param fileMap commit file snapshot.**/
     public Commit(String msg, String[] parents,
-                  HashMap<String, Blob> fileMap) {
+                  HashMap<String, String> fileMap) {
         Date date = new Date();
         this._message = msg;
         this._parentCommit = parents[0];
         this._parentCommits = parents;
-        this._fileToBlob = fileMap;
+        this._snapshot = new Tree(fileMap);
+        this._tree = _snapshot.getID();
         this._timeStamp = new SimpleDateFormat("EEE MMM d"
                 + " HH:mm:ss yyyy").format(date) + " -0800";
         this._hashed = hashMe();
     }
 
+    /** A commit with message MSG whose snapshot is TREE, which may
+     * share unchanged subtrees with its parents' trees (see
+     * Tree.update), and whose parents are PARENTS (the first parent
+     * first).
+     * @param msg commit message.
+     * @param tree commit snapshot.
+     * @param parents commit parents.**/
+    Commit(String msg, Tree tree, String[] parents) {
+        Date date = new Date();
+        this._message = msg;
+        this._parentCommit = parents[0];
+        this._parentCommits = parents;
+        this._snapshot = tree;
+        this._tree = tree.getID();
+        this._timeStamp = new SimpleDateFormat("EEE MMM d"
+                + " HH:mm:ss yyyy").format(date) + " -0800";
+        this._hashed = hashMe();
+    }
+
+    /** Rebuild the stored commit with ID from its fields (see Codec).
+     * @param id commit ID.
+     * @param msg commit message.
+     * @param parent first parent ID, or "" for the initial commit.
+     * @param parents all parent IDs.
+     * @param tree tree ID.
+     * @param timestamp formatted commit time.**/
+    Commit(String id, String msg, String parent, String[] parents,
+           String tree, String timestamp) {
+        this._message = msg;
+        this._parentCommit = parent;
+        this._parentCommits = parents;
+        this._tree = tree;
+        this._timeStamp = timestamp;
+        this._hashed = id;
+    }
+
     /** Return STRING HASH of commit.
      * @return unique Commit ID.*/
     public String hashMe() {
-        String filesString = "";
-        if (_fileToBlob != null) {
-            filesString = _fileToBlob.toString();
-        }
-        return Utils.sha1(_message, filesString,
+        return Utils.sha1(_message, _tree,
                 _timeStamp, _parentCommit, Arrays.toString(_parentCommits));
     }
 
@@ -100,10 +136,42 @@ public class Commit implements Serializable {
         return this._hashed;
     }
 
-    /** Getter method for files.
-     * @return files.**/
-    public HashMap<String, Blob> getFiles() {
-        return this._fileToBlob;
+    /** Getter method for files. The tree is only read from the
+     * object store the first time this is called.
+     * @return file name -> blob ID map.**/
+    public HashMap<String, String> getFiles() {
+        return getTree().getFiles();
+    }
+
+    /** Getter method for the snapshot tree, loading it if needed.
+     * @return tree of this commit.**/
+    Tree getTree() {
+        if (_snapshot == null) {
+            _snapshot = _store.readTree(_tree);
+        }
+        return _snapshot;
+    }
+
+    /** Getter method for tree ID.
+     * @return tree ID.**/
+    public String getTreeID() {
+        return this._tree;
+    }
+
+    /** Return a copy of this stored commit without its tree, which the
+     * copy reads again when asked for it. Lets ObjectStore cache commits
+     * without keeping the trees of their users alive.
+     * @return copy.**/
+    Commit unloaded() {
+        return new Commit(_hashed, _message, _parentCommit, _parentCommits,
+                _tree, _timeStamp);
+    }
+
+    /** Remember the object store this commit was read from,
+     * so its tree can be loaded lazily.
+     * @param store object store.**/
+    void setStore(ObjectStore store) {
+        this._store = store;
     }
 
     /** Getter method for timestamp.
@@ -112,12 +180,29 @@ public class Commit implements Serializable {
         return this._timeStamp;
     }
 
+    /** Return commit time in milliseconds, parsed back from the
+     * timestamp (0 if it cannot be parsed).
+     * @return commit time.**/
+    public long getTime() {
+        try {
+            return new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy")
+                    .parse(_timeStamp).getTime();
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** Commit Message. **/
     private String _message;
 
-    /** Maps filename to blob references
-     * (i.e. SHA-1 hash of blob). **/
-    private HashMap<String, Blob> _fileToBlob = new HashMap<>();
+    /** SHA-1 ID of the tree mapping filenames to blob references. **/
+    private String _tree;
+
+    /** Tree with ID _tree, once loaded. **/
+    private transient Tree _snapshot;
+
+    /** Object store to load _snapshot from. **/
+    private transient ObjectStore _store;
 
     /** Name of HEAD branch. **/
     private String headName;
@@ -138,4 +223,10 @@ public class Commit implements Serializable {
     /** Hashed version of this commit. **/
     private String _hashed;
 
+    /** Serialization version, fixed so commits Java-serialized by the
+     * versions with trees but before Codec can still be read. Those of
+     * the first version, and of the first with trees, are read by
+     * Baseline. **/
+    private static final long serialVersionUID = 73214867503181587L;
+
 }
@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Persistent commit-graph: one fixed-width record per commit, so that
+ * history walks never have to deserialize a commit. <p></p>
+ * .gitlet/commit-graph holds records of RECORD_SIZE bytes:
+ * the binary commit ID, the indexes of the first and second parents
+ * (or NONE), the generation number (1 + max generation of parents),
+ * the commit time in milliseconds and the offset of the commit's
+ * date and message in .gitlet/commit-graph-data. Records are only ever
+ * appended, and a commit's parents always come before it.
+ * @author Kevin Moy**/
+
+class CommitGraph {
+
+    /** Index value for a missing parent. **/
+    static final int NONE = -1;
+    /** Bytes in a binary SHA-1 ID. **/
+    static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** Merge-base mark for commits reachable from the first commit. **/
+    private static final int SIDE_A = 1;
+    /** Merge-base mark for commits reachable from the second commit. **/
+    private static final int SIDE_B = 2;
+    /** Merge-base mark for commits reachable from both. **/
+    private static final int BOTH_SIDES = SIDE_A | SIDE_B;
+    /** Bytes in one record. **/
+    static final int RECORD_SIZE = ID_BYTES + 4 + 4 + 4 + 8 + 8;
+
+    /** Open the commit-graph of the .gitlet directory GITLETDIR,
+     * (re)building it from STORE if it does not exist yet.
+     * @param gitletDir the .gitlet directory.
+     * @param store object store holding the commits.**/
+    CommitGraph(File gitletDir, ObjectStore store) {
+        _store = store;
+        _graphFile = new File(gitletDir, "commit-graph");
+        _dataFile = new File(gitletDir, "commit-graph-data");
+        _positions = new HashMap<>();
+        if (_graphFile.isFile() && _dataFile.isFile()) {
+            _records = Utils.readContents(_graphFile);
+            _count = _records.length / RECORD_SIZE;
+            _dataLength = _dataFile.length();
+            for (int i = 0; i < _count; i += 1) {
+                _positions.put(id(i), i);
+            }
+        } else {
+            _records = new byte[0];
+            _graphFile.delete();
+            _dataFile.delete();
+            rebuild();
+        }
+    }
+
+    /** Return number of commits in the graph.
+     * @return commit count.**/
+    int size() {
+        return _count;
+    }
+
+    /** Return the position of commit ID, adding it (and any missing
+     * ancestors) from the object store if the graph lacks it.
+     * @param id full commit ID.
+     * @return position of the commit, or NONE if there is no such commit.
+     **/
+    int position(String id) {
+        Integer pos = _positions.get(id);
+        if (pos != null) {
+            return pos;
+        }
+        if (!_store.hasCommit(id)) {
+            return NONE;
+        }
+        ArrayDeque<Commit> pending = new ArrayDeque<>();
+        pending.push(_store.readCommit(id));
+        while (!pending.isEmpty()) {
+            Commit commit = pending.peek();
+            boolean ready = true;
+            for (String parent : commit.getParents()) {
+                if (!parent.equals("") && !_positions.containsKey(parent)) {
+                    pending.push(_store.readCommit(parent));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                add(pending.pop());
+            }
+        }
+        return _positions.get(id);
+    }
+
+    /** Append a record for COMMIT, unless already present.
+     * Parents missing from the graph are added first.
+     * @param commit a stored commit.**/
+    void add(Commit commit) {
+        if (_positions.containsKey(commit.getID())) {
+            return;
+        }
+        String[] parents = commit.getParents();
+        int[] parentPos = new int[] {NONE, NONE};
+        int generation = 1;
+        for (int i = 0; i < parents.length && i < 2; i += 1) {
+            if (!parents[i].equals("")) {
+                parentPos[i] = position(parents[i]);
+                generation = Math.max(generation,
+                        generation(parentPos[i]) + 1);
+            }
+        }
+        byte[] data = encodeData(commit.getTimestamp(), commit.getMsg());
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE);
+        rec.put(toBinary(commit.getID()));
+        rec.putInt(parentPos[0]).putInt(parentPos[1]).putInt(generation);
+        rec.putLong(commit.getTime()).putLong(_dataLength);
+        append(_dataFile, data);
+        append(_graphFile, rec.array());
+        _dataLength += data.length;
+        if ((_count + 1) * RECORD_SIZE > _records.length) {
+            _records = Arrays.copyOf(_records,
+                    Math.max(RECORD_SIZE, 2 * _records.length));
+        }
+        System.arraycopy(rec.array(), 0, _records,
+                _count * RECORD_SIZE, RECORD_SIZE);
+        _positions.put(commit.getID(), _count);
+        _count += 1;
+    }
+
+    /** Return full commit ID at POS.
+     * @param pos position.
+     * @return commit ID.**/
+    String id(int pos) {
+        return toHex(_records, pos * RECORD_SIZE);
+    }
+
+    /** Return positions of the parents of POS, first parent first.
+     * @param pos position.
+     * @return parent positions (possibly empty).**/
+    int[] parents(int pos) {
+        ByteBuffer buf = record(pos);
+        int p1 = buf.getInt(ID_BYTES), p2 = buf.getInt(ID_BYTES + 4);
+        if (p1 == NONE) {
+            return new int[0];
+        } else if (p2 == NONE) {
+            return new int[] {p1};
+        }
+        return new int[] {p1, p2};
+    }
+
+    /** Return the position of the first parent of POS.
+     * @param pos position.
+     * @return first parent's position, or NONE.**/
+    int firstParent(int pos) {
+        return record(pos).getInt(ID_BYTES);
+    }
+
+    /** Return generation number of POS (1 for a root commit).
+     * @param pos position.
+     * @return generation number.**/
+    int generation(int pos) {
+        return record(pos).getInt(ID_BYTES + 8);
+    }
+
+    /** Return commit time of POS in milliseconds.
+     * @param pos position.
+     * @return commit time.**/
+    long time(int pos) {
+        return record(pos).getLong(ID_BYTES + 12);
+    }
+
+    /** Return the formatted date of POS, as in Commit.getTimestamp.
+     * @param pos position.
+     * @return timestamp string.**/
+    String timestamp(int pos) {
+        return readData(pos)[0];
+    }
+
+    /** Return the message of POS.
+     * @param pos position.
+     * @return commit message.**/
+    String message(int pos) {
+        return readData(pos)[1];
+    }
+
+    /** Return the best common ancestor of positions A and B: a common
+     * ancestor that is not an ancestor of any other common ancestor.
+     * Both sides are walked together over all parents, highest
+     * generation first, marking each commit with the side(s) that reach
+     * it. Since a commit's generation is always greater than its
+     * parents', every commit is fully marked by the time it is taken
+     * off the queue, so the first one marked by both sides is the
+     * answer.
+     * @param a position of the first commit.
+     * @param b position of the second commit.
+     * @return position of the merge base, or NONE if there is none.**/
+    int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        HashMap<Integer, Integer> marks = new HashMap<>();
+        HashSet<Integer> done = new HashSet<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                (x, y) -> generation(y) != generation(x)
+                        ? Integer.compare(generation(y), generation(x))
+                        : Long.compare(time(y), time(x)));
+        marks.put(a, SIDE_A);
+        marks.put(b, SIDE_B);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            if (!done.add(pos)) {
+                continue;
+            }
+            int mark = marks.get(pos);
+            if (mark == BOTH_SIDES) {
+                return pos;
+            }
+            for (int parent : parents(pos)) {
+                int old = marks.getOrDefault(parent, 0);
+                if ((old | mark) != old) {
+                    marks.put(parent, old | mark);
+                    queue.add(parent);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Return the record at POS as a buffer.
+     * @param pos position.
+     * @return record buffer.**/
+    private ByteBuffer record(int pos) {
+        return ByteBuffer.wrap(_records, pos * RECORD_SIZE, RECORD_SIZE)
+                .slice();
+    }
+
+    /** Return the date and message stored for POS.
+     * @param pos position.
+     * @return {timestamp, message}.**/
+    private String[] readData(int pos) {
+        if (_data == null || _data.length < _dataLength) {
+            _data = Utils.readContents(_dataFile);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(_data);
+        buf.position((int) record(pos).getLong(ID_BYTES + 20));
+        String[] result = new String[2];
+        for (int i = 0; i < 2; i += 1) {
+            byte[] str = new byte[buf.getInt()];
+            buf.get(str);
+            result[i] = new String(str, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /** Rebuild the graph from every commit in the object store. **/
+    private void rebuild() {
+        List<String> all = _store.commitIds();
+        all.sort(null);
+        for (String id : all) {
+            position(id);
+        }
+    }
+
+    /** Return the length-prefixed UTF-8 encoding of DATE and MSG.
+     * @param date commit timestamp.
+     * @param msg commit message.
+     * @return encoded data entry.**/
+    private static byte[] encodeData(String date, String msg) {
+        byte[] d = date.getBytes(StandardCharsets.UTF_8);
+        byte[] m = msg.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(8 + d.length + m.length);
+        buf.putInt(d.length).put(d).putInt(m.length).put(m);
+        return buf.array();
+    }
+
+    /** Append BYTES to FILE.
+     * @param file file to extend.
+     * @param bytes bytes to append.**/
+    private static void append(File file, byte[] bytes) {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the binary form of hexadecimal ID.
+     * @param id hex SHA-1 ID.
+     * @return ID_BYTES bytes.**/
+    static byte[] toBinary(String id) {
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            result[i] = (byte) (Character.digit(id.charAt(2 * i), 16) << 4
+                    | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Return the hexadecimal form of the binary ID at OFFSET in BYTES.
+     * @param bytes byte array.
+     * @param offset start of ID.
+     * @return hex SHA-1 ID.**/
+    static String toHex(byte[] bytes, int offset) {
+        return Utils.toHex(bytes, offset, ID_BYTES);
+    }
+
+    /** Object store to read missing commits from. **/
+    private ObjectStore _store;
+    /** File of fixed-width records. **/
+    private File _graphFile;
+    /** File of commit dates and messages. **/
+    private File _dataFile;
+    /** All records; only the first _count are valid. **/
+    private byte[] _records;
+    /** Number of records. **/
+    private int _count;
+    /** Contents of _dataFile, read on first use. **/
+    private byte[] _data;
+    /** Length of _dataFile. **/
+    private long _dataLength;
+    /** Maps commit ID to its position. **/
+    private HashMap<String, Integer> _positions;
+
+}
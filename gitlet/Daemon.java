@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Runs gitlet commands in a long-lived process. <p></p>
+ * "gitlet daemon", run in a repository, listens on the Unix domain
+ * socket .gitlet/daemon.sock until "gitlet daemon stop". While the
+ * socket exists, Main forwards every command to the daemon (forward)
+ * instead of running it, so the daemon pays for JIT warm-up and for
+ * opening the object store, commit-graph and ID index once rather than
+ * for every command. Commands run one at a time, in the order they
+ * arrive. <p></p>
+ * The refs and index are read afresh by each command. The other caches
+ * are kept only while the files they were read from are unchanged
+ * since the daemon's last command (see stamp), so commands run by a
+ * gitlet without the daemon are seen as well. <p></p>
+ * A request is the number of arguments followed by each argument, as
+ * a length and UTF-8 bytes. The reply is a sequence of frames, each a
+ * kind byte and a length followed by that many bytes of standard output
+ * (OUT) or standard error (ERR), ending with an EXIT frame holding the
+ * exit code. If no daemon answers, the command runs in the client.
+ * @author Kevin Moy**/
+
+class Daemon {
+
+    /** Socket path, relative to the working directory. **/
+    static final String SOCKET = ".gitlet/daemon.sock";
+    /** Frame kinds. **/
+    static final int EXIT = 0, OUT = 1, ERR = 2;
+
+    /** Serve commands on SOCKET until told to stop. Reports an error
+     * if another daemon already serves this repository. **/
+    static void serve() {
+        File socket = new File(SOCKET);
+        if (socket.exists()) {
+            if (connect() != null) {
+                Utils.message("A daemon is already running.");
+                throw new GitletException();
+            }
+            socket.delete();
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET));
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(socket::delete));
+            Daemon daemon = new Daemon();
+            while (!daemon._stopped) {
+                try (SocketChannel client = server.accept()) {
+                    daemon.handle(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Run the command ARGS in the daemon serving this repository, if
+     * there is one, copying its output to System.out and System.err.
+     * @param args command and operands.
+     * @return exit code of the command, or null if no daemon answered
+     *         (and so nothing was run).**/
+    static Integer forward(String... args) {
+        if (!new File(SOCKET).exists()) {
+            return null;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return null;
+        }
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                Channels.newInputStream(channel));
+            while (true) {
+                int kind = in.readByte();
+                int length = in.readInt();
+                if (kind == EXIT) {
+                    System.out.flush();
+                    return length;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                PrintStream dest = kind == ERR ? System.err : System.out;
+                dest.write(bytes, 0, length);
+                dest.flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException("lost connection to "
+                + "daemon: " + excp.getMessage());
+        }
+    }
+
+    /** Return a connection to the daemon of this repository.
+     * @return connected channel, or null if no daemon is listening.**/
+    private static SocketChannel connect() {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(SOCKET));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Read one command from CLIENT, run it with the output going back
+     * to CLIENT, and send its exit code.
+     * @param client connection to a client.**/
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+            Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            args[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(client)));
+        PrintStream stdout = System.out, stderr = System.err;
+        int code = 0;
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new Frames(out, OUT)), false,
+                StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new BufferedOutputStream(
+                new Frames(out, ERR)), false,
+                StandardCharsets.UTF_8));
+        try {
+            if (Arrays.equals(args, new String[] {"daemon", "stop"})) {
+                _stopped = true;
+            } else {
+                Main.execute(fresh() ? _warm : null, args);
+            }
+        } catch (GitletException excp) {
+            code = 0;
+        } catch (RuntimeException | Error excp) {
+            excp.printStackTrace();
+            code = 1;
+            Main.forgetRepo();
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        _warm = Main.repo();
+        _stamp = stamp();
+        out.writeByte(EXIT);
+        out.writeInt(code);
+        out.flush();
+    }
+
+    /** Return true iff the caches of the last command's repository
+     * still match the files they were read from.
+     * @return whether _warm may be reused.**/
+    private boolean fresh() {
+        return _warm != null && Arrays.equals(_stamp, stamp());
+    }
+
+    /** Return the lengths and modification times of the files the
+     * object store, commit-graph and ID index cache, which change
+     * whenever a commit is made or the objects are repacked.
+     * @return stamp of the cached files.**/
+    static long[] stamp() {
+        String[] names = {"commit-graph", "commit-graph-data",
+            "commit-index", "commit-index-new", "packs"};
+        long[] result = new long[2 * names.length];
+        for (int i = 0; i < names.length; i += 1) {
+            File f = new File(".gitlet", names[i]);
+            result[2 * i] = f.length();
+            result[2 * i + 1] = Index.Stat.mtime(f);
+        }
+        return result;
+    }
+
+    /** Writes everything written to it to a client in frames of one
+     * kind. **/
+    private static class Frames extends OutputStream {
+
+        /** Frames of KIND written to OUT.
+         * @param out connection to the client.
+         * @param kind OUT or ERR.**/
+        Frames(DataOutputStream out, int kind) {
+            _out = out;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _out.writeByte(_kind);
+            _out.writeInt(len);
+            _out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _out.flush();
+        }
+
+        /** Connection to the client. **/
+        private final DataOutputStream _out;
+        /** Frame kind. **/
+        private final int _kind;
+    }
+
+    /** Repository of the last command, whose caches may be reused. **/
+    private Gitlet _warm;
+    /** Stamp of the cached files after the last command. **/
+    private long[] _stamp;
+    /** True once told to stop. **/
+    private boolean _stopped;
+
+}
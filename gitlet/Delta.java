@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of a file, used to store blobs
+ * in pack files. A delta is the varint lengths of the base and the
+ * target, followed by instructions that rebuild the target: COPY
+ * (varint offset, varint length) copies a run of the base, and INSERT
+ * (varint length, bytes) adds literal bytes.
+ * @author Kevin Moy**/
+
+class Delta {
+
+    /** Instruction copying a run of the base. **/
+    static final byte COPY = 1;
+    /** Instruction inserting literal bytes. **/
+    static final byte INSERT = 2;
+    /** Length of the blocks of the base that are indexed for matching. **/
+    static final int BLOCK = 16;
+
+    /** Return a delta that turns BASE into TARGET.
+     * @param base older contents.
+     * @param target newer contents.
+     * @return encoded delta.**/
+    static byte[] create(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int pending = 0, i = 0;
+        while (i < target.length) {
+            Integer match = null;
+            if (i + BLOCK <= target.length) {
+                match = blocks.get(blockHash(target, i));
+            }
+            if (match != null && Arrays.equals(base, match, match + BLOCK,
+                    target, i, i + BLOCK)) {
+                int start = match, length = BLOCK;
+                while (start + length < base.length
+                        && i + length < target.length
+                        && base[start + length] == target[i + length]) {
+                    length += 1;
+                }
+                while (pending > 0 && start > 0
+                        && base[start - 1] == target[i - 1]) {
+                    start -= 1;
+                    i -= 1;
+                    length += 1;
+                    pending -= 1;
+                }
+                flushInsert(out, target, i - pending, pending);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, length);
+                pending = 0;
+                i += length;
+            } else {
+                pending += 1;
+                i += 1;
+            }
+        }
+        flushInsert(out, target, i - pending, pending);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.
+     * @param base contents the delta was made against.
+     * @param delta encoded delta.
+     * @return rebuilt contents.**/
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readVarint(in) != base.length) {
+            throw new IllegalArgumentException("delta base mismatch");
+        }
+        byte[] result = new byte[(int) readVarint(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            byte op = in.get();
+            if (op == COPY) {
+                int start = (int) readVarint(in);
+                int length = (int) readVarint(in);
+                System.arraycopy(base, start, result, pos, length);
+                pos += length;
+            } else if (op == INSERT) {
+                int length = (int) readVarint(in);
+                in.get(result, pos, length);
+                pos += length;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (pos != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Write an INSERT of LENGTH bytes of DATA from START, if any.
+     * @param out delta being written.
+     * @param data target contents.
+     * @param start first byte to insert.
+     * @param length number of bytes to insert.**/
+    private static void flushInsert(ByteArrayOutputStream out, byte[] data,
+                                    int start, int length) {
+        if (length > 0) {
+            out.write(INSERT);
+            writeVarint(out, length);
+            out.write(data, start, length);
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START.
+     * @param data contents.
+     * @param start first byte.
+     * @return block hash.**/
+    private static int blockHash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = 31 * h + data[i];
+        }
+        return h;
+    }
+
+    /** Write VALUE to OUT, seven bits per byte, low bits first.
+     * @param out output.
+     * @param value non-negative value.**/
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Return the next varint of IN.
+     * @param in input.
+     * @return decoded value.**/
+    static long readVarint(ByteBuffer in) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            result |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+}
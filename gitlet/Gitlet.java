@@ -2,10 +2,20 @@ package gitlet;
 
 import java.io.Serializable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Represents a gitlet repository. Can only be one per directory.
  * Assume this Gitlet object is created in the CURRENT directory
@@ -25,58 +35,53 @@ public class Gitlet implements Serializable {
      */
     public Gitlet() {
         Commit ufc = new Commit();
+        this._refs = new Refs(new File(".gitlet"));
+        this._index = new Index(new File(".gitlet"));
         createDirectories();
-        serializeAndWrite(ufc);
-        this._head = "master";
-        this._currentbranch = "master";
-        this._stagingArea = new HashMap<>();
-        this._branches = new HashMap<>();
-        this._untracked = new ArrayList<String>();
-        _branches.put(_head, ufc.getID());
-        this._numEdits = 0;
-        this._unstagedMods = new HashMap<>();
-    }
-
-    /** USAGE: java gitlet.Main add [file name] <p></p>
+        writeCommit(ufc);
+        _refs.setHead("master");
+        _refs.put("master", ufc.getID());
+    }
+
+    /** An existing repository with refs REFS and index INDEX.
+     * @param refs branches and HEAD.
+     * @param index staging area.**/
+    Gitlet(Refs refs, Index index) {
+        this._refs = refs;
+        this._index = index;
+    }
+
+    /** Use the object store, commit-graph and ID index of OTHER, a
+     * repository of the same directory whose caches are still valid,
+     * instead of opening them again.
+     * @param other repository of an earlier command.**/
+    void reuseCaches(Gitlet other) {
+        _store = other._store;
+        _graph = other._graph;
+        _ids = other._ids;
+    }
+
+    /** USAGE: java gitlet.Main add [file name or pattern]... <p></p>
      * Handling of the gitlet add function.
-     * Stages the file.
+     * Stages the files.
      * If file already in staging area, overwrite it.
      * If file is identical to (current) commit file (hasn't been edited)
      * then there is no reason to have
      * it in the staging area (remove if it is).
-     * @param filename filename to add.
+     * Each path may also be a directory (its plain files) or a glob
+     * pattern; see BulkAdd. Files are hashed in parallel, and only if
+     * the index cannot vouch that they are unchanged since gitlet last
+     * hashed or wrote them.
+     * @param paths files, directories and patterns to add.
      **/
-    public void add(String filename) {
-        File file = new File(filename);
-        if (!file.exists()) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
-        }
-        Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-        String newHashed = new Blob(filename).getID();
-
-        File stagePATH = new File(".gitlet/stagingArea/" + newHashed);
-
-        if (headFiles == null || !headFiles.containsKey(filename)
-                || !headFiles.get(filename).getID().equals(newHashed)) {
-            _stagingArea.put(filename, new Blob(filename));
-            stage(stagePATH, file);
-        } else {
-            if (stagePATH.exists()) {
-                _stagingArea.remove(filename);
-            }
+    public void add(String... paths) {
+        List<String> names = BulkAdd.expand(Arrays.asList(paths));
+        Tree head = acquireHeadCommit().getTree();
+        HashMap<String, String> headFiles = new HashMap<>();
+        for (String name : names) {
+            headFiles.put(name, head.get(name));
         }
-        if (_untracked.contains(filename)) {
-            _untracked.remove(filename);
-        }
-    }
-
-    /** OFFICIALLY stage FILE into staging area specified by stagePATH.
-     * @param stagePATH PATH of file in staging area.
-     * @param file file to stage. **/
-    private void stage(File stagePATH, File file) {
-        Utils.writeContents(stagePATH, Utils.readContentsAsString(file));
+        new BulkAdd(names, headFiles, _index, store()).apply();
     }
 
     /** USAGE: java gitlet.Main commit [message] <p></p>
@@ -85,6 +90,8 @@ public class Gitlet implements Serializable {
      * ONLY staged and removed files updated in commit.
      * Remove command (rm) can exclude certain
      * files from the commit.
+     * Directories without staged changes keep their trees, which are
+     * not even read (see Tree.update).
      * @param msg commit message
      **/
     public void commit(String msg) {
@@ -97,26 +104,12 @@ public class Gitlet implements Serializable {
             throw new GitletException();
         }
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> commitFiles = head.getFiles();
-        if (commitFiles == null) {
-            commitFiles = new HashMap<String, Blob>();
-        }
-        Set<String> trackedFilenames = _stagingArea.keySet();
-        if (stagedFilesExist() || untrackedFilesExist()) {
-            for (String filename : trackedFilenames) {
-                commitFiles.put(filename, _stagingArea.get(filename));
-            }
-            for (String ignoredFile : _untracked) {
-                commitFiles.remove(ignoredFile);
-            }
-        }
+        Tree tree = head.getTree().update(_index.staged(), _index.removed());
         String parent = head.getID();
-        Commit newCommit = new Commit(msg, parent, commitFiles);
-        simpleWrite(newCommit);
-        _stagingArea.clear();
-        _untracked.clear();
-        _unstagedMods.clear();
-        _branches.put(_head, newCommit.getID());
+        Commit newCommit = new Commit(msg, tree, new String[] {parent});
+        writeCommit(newCommit);
+        _index.clear();
+        _refs.put(_refs.head(), newCommit.getID());
     }
 
     /**
@@ -131,29 +124,15 @@ public class Gitlet implements Serializable {
             throw new GitletException();
         }
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-        if (headFiles == null) {
-            headFiles = new HashMap<String, Blob>();
-        }
-        if (stagedFilesExist() || untrackedFilesExist()) {
-            Set<String> filesToStage = _stagingArea.keySet();
-            for (String fileName : filesToStage) {
-                headFiles.put(fileName, _stagingArea.get(fileName));
-            }
-            for (String fileName : _untracked) {
-                headFiles.remove(fileName);
-            }
-        } else {
+        if (!stagedFilesExist() && !untrackedFilesExist()) {
             Utils.message("No changes added to the commit.");
             throw new GitletException();
         }
-        Commit newCommit = new Commit(msg, parentCommits, headFiles);
-        String hashedMergeCommit = newCommit.getID();
-        File newCommFile = new File(".gitlet/commitLog/" + hashedMergeCommit);
-        Utils.writeObject(newCommFile, newCommit);
-        _untracked.clear();
-        _stagingArea.clear();
-        _branches.put(_head, newCommit.getID());
+        Tree tree = head.getTree().update(_index.staged(), _index.removed());
+        Commit newCommit = new Commit(msg, tree, parentCommits);
+        writeCommit(newCommit);
+        _index.clear();
+        _refs.put(_refs.head(), newCommit.getID());
     }
 
     /** USAGE: java gitlet.Main log <p></p>
@@ -161,28 +140,43 @@ public class Gitlet implements Serializable {
      *
      **/
     public void log() {
-        String commitPtr = _branches.get(_head);
-        while (!commitPtr.equals("") && commitPtr != null) {
-            Commit current = convertHashToCommit(commitPtr);
-            print(current);
-            if (current.getParents().length > 0) {
-                commitPtr = current.getFirstParent();
-            } else {
-                commitPtr = current.getParent();
-            }
+        for (Repository.CommitInfo info : history()) {
+            print(info);
         }
     }
 
+    /** Return the commits log prints, from HEAD back to the initial
+     * commit along first parents.
+     * @return commits, newest first.**/
+    List<Repository.CommitInfo> history() {
+        CommitGraph graph = graph();
+        List<Repository.CommitInfo> result = new ArrayList<>();
+        int commitPtr = graph.position(_refs.get(_refs.head()));
+        while (commitPtr != CommitGraph.NONE) {
+            result.add(info(commitPtr));
+            commitPtr = graph.firstParent(commitPtr);
+        }
+        return result;
+    }
+
     /** USAGE: java gitlet.Main global-log <p></p>
      * Print log of all commits ever made, in any order.
      **/
     public void globalLog() {
-        File[] allCommitsEverMade = new File(".gitlet/commitLog").listFiles();
-        String commitHash;
-        for (File commitFile : allCommitsEverMade) {
-            commitHash = commitFile.getName();
-            print(convertHashToCommit(commitHash));
+        for (Repository.CommitInfo info : allCommits()) {
+            print(info);
+        }
+    }
+
+    /** Return every commit ever made, in commit-graph order.
+     * @return commits.**/
+    List<Repository.CommitInfo> allCommits() {
+        CommitGraph graph = graph();
+        List<Repository.CommitInfo> result = new ArrayList<>();
+        for (int pos = 0; pos < graph.size(); pos += 1) {
+            result.add(info(pos));
         }
+        return result;
     }
 
     /**
@@ -190,23 +184,55 @@ public class Gitlet implements Serializable {
      * @param commit Commit to print.
      **/
     public void print(Commit commit) {
-        if (commit.getParents() != new String[0]
-                && commit.getParents().length > 1) {
-            System.out.println("===");
-            System.out.println("commit " + commit.getID());
-            String abbrevP1 = commit.getParents()[0].substring(0, 7);
-            String abbrevP2 = commit.getParents()[1].substring(0, 7);
+        print(commit.getID(), commit.getParents(),
+                commit.getTimestamp(), commit.getMsg());
+    }
+
+    /**
+     * Return the commit at position POS of the commit-graph,
+     * without reading the commit itself.
+     * @param pos commit-graph position.
+     * @return log entry of the commit.
+     **/
+    private Repository.CommitInfo info(int pos) {
+        CommitGraph graph = graph();
+        int[] parentPos = graph.parents(pos);
+        List<String> parents = new ArrayList<>();
+        for (int p : parentPos) {
+            parents.add(graph.id(p));
+        }
+        return new Repository.CommitInfo(graph.id(pos), parents,
+                graph.timestamp(pos), graph.message(pos));
+    }
+
+    /**
+     * Print a commit-graph commit's log entry.
+     * @param info commit.
+     **/
+    private void print(Repository.CommitInfo info) {
+        print(info.id(), info.parents().toArray(new String[0]),
+                info.date(), info.message());
+    }
+
+    /**
+     * Print a commit's log entry.
+     * @param id commit ID.
+     * @param parents parent commit IDs.
+     * @param date commit timestamp.
+     * @param msg commit message.
+     **/
+    private void print(String id, String[] parents, String date,
+                       String msg) {
+        System.out.println("===");
+        System.out.println("commit " + id);
+        if (parents.length > 1) {
+            String abbrevP1 = parents[0].substring(0, 7);
+            String abbrevP2 = parents[1].substring(0, 7);
             System.out.println("Merge: " + abbrevP1 + " " + abbrevP2);
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMsg());
-            System.out.println();
-        } else {
-            System.out.println("===");
-            System.out.println("commit " + commit.getID());
-            System.out.println("Date: " + commit.getTimestamp());
-            System.out.println(commit.getMsg());
-            System.out.println();
         }
+        System.out.println("Date: " + date);
+        System.out.println(msg);
+        System.out.println();
     }
 
     /** Essentially deserialization. <p></p>
@@ -215,15 +241,9 @@ public class Gitlet implements Serializable {
      * @param hash commit UID
      **/
     private Commit convertHashToCommit(String hash) {
-        File file = new File(".gitlet/commitLog/" + hash);
-        File file2 = new File(".gitlet/commitLog/" + fullHash(hash));
-
-        if (file.exists()) {
-            return Utils.readObject(file, Commit.class);
-        }
-
-        if (file2.exists()) {
-            return Utils.readObject(file2, Commit.class);
+        Commit commit = store().readCommit(fullHash(hash));
+        if (commit != null) {
+            return commit;
         }
         Utils.message("No commit with that id exists.");
         throw new GitletException();
@@ -236,15 +256,11 @@ public class Gitlet implements Serializable {
      * @param filename file name.
      **/
     public void checkoutFile(String filename) {
-        String headHash = fullHash(_branches.get(_head));
+        String headHash = fullHash(_refs.get(_refs.head()));
         Commit head = convertHashToCommit(headHash);
-        HashMap<String, Blob> headFiles = head.getFiles();
-        if (headFiles.containsKey(filename)) {
-            File file = new File(filename);
-            File headVersionFile = new File(".gitlet/stagingArea/"
-                    + headFiles.get(filename).getID());
-            String desiredFile = Utils.readContentsAsString(headVersionFile);
-            Utils.writeContents(file, desiredFile);
+        String id = head.getTree().get(filename);
+        if (id != null) {
+            writeWorkingFile(filename, id);
         } else {
             Utils.message("File does not exist in that commit.");
             throw new GitletException();
@@ -259,13 +275,9 @@ public class Gitlet implements Serializable {
      **/
     public void checkoutCommitFile(String commitID, String filename) {
         Commit commit = convertHashToCommit(commitID);
-        HashMap<String, Blob> commitFiles = commit.getFiles();
-        if (commitFiles.containsKey(filename)) {
-            File file = new File(filename);
-            File commitVersionFile = new File(".gitlet/stagingArea/"
-                    + commitFiles.get(filename).getID());
-            String desiredFile = Utils.readContentsAsString(commitVersionFile);
-            Utils.writeContents(file, desiredFile);
+        String id = commit.getTree().get(filename);
+        if (id != null) {
+            writeWorkingFile(filename, id);
         } else {
             Utils.message("File does not exist in that commit.");
             throw new GitletException();
@@ -275,55 +287,44 @@ public class Gitlet implements Serializable {
     /** USAGE: java gitlet.Main checkout [branch name] <p></p>
      * Checkout v3.
      * Paste all files in branch head to working directory.
-     * OVERWRITE files in working directory if needed.
+     * OVERWRITE files in working directory if needed; files that
+     * already match are left alone (see syncWorkingTree).
      * Set current branch (head) to passed in branch.
      * @param branchname given branch name
      **/
     public void checkoutBranch(String branchname) {
-        boolean branchExists = _branches.containsKey(branchname);
+        boolean branchExists = _refs.contains(branchname);
         if (!branchExists) {
             Utils.message("No such branch exists.");
             throw new GitletException();
         }
-        if (branchname.equals(_head)) {
+        if (branchname.equals(_refs.head())) {
             Utils.message("No need to checkout the current branch.");
             throw new GitletException();
         }
-        String branchHeadHash = _branches.get(branchname);
         Commit givenBH = getHC(branchname);
-        HashMap<String, Blob> givenBHFiles = givenBH.getFiles();
-        File workingDir = new File(System.getProperty("user.dir"));
-        untrackedInWay(workingDir);
-        File[] wdFiles = workingDir.listFiles();
-        pasteFromBranch(givenBHFiles, wdFiles);
-        if (givenBHFiles != null) {
-            for (String filename : givenBHFiles.keySet()) {
-                File f = new File(".gitlet/stagingArea/"
-                        + givenBHFiles.get(filename).getID());
-                String desiredFile = Utils.readContentsAsString(f);
-                File file = new File(filename);
-                Utils.writeContents(file, desiredFile);
-            }
-        }
-        _stagingArea.clear();
-        _untracked.clear();
-        _head = branchname;
+        syncWorkingTree(givenBH);
+        _index.clear();
+        _refs.setHead(branchname);
     }
 
     /**
      * Return entire hashcode of commit, or itself if already full.
+     * Abbreviations are looked up in the sorted ID index, and must
+     * be a prefix of exactly one commit ID.
      * @param commitHash shortened commit hash
      **/
     private String fullHash(String commitHash) {
         if (commitHash.length() == Utils.UID_LENGTH) {
             return commitHash;
         }
-        File[] commitFiles = new File(".gitlet/commitLog").listFiles();
-        for (File commitFile : commitFiles) {
-            String fullName = commitFile.getName();
-            if (fullName.contains(commitHash)) {
-                return fullName;
-            }
+        List<String> matches = ids().resolve(commitHash, 2);
+        if (matches.size() == 1) {
+            return matches.get(0);
+        }
+        if (matches.size() > 1) {
+            Utils.message("Ambiguous commit id.");
+            throw new GitletException();
         }
         Utils.message("No commit with that id exists.");
         throw new GitletException();
@@ -337,20 +338,20 @@ public class Gitlet implements Serializable {
     public void rm(String filename) {
         File file = new File(filename);
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-        if (!file.exists() && !headFiles.containsKey(filename)) {
+        boolean tracked = head.getTree().get(filename) != null;
+        if (!file.exists() && !tracked) {
             Utils.message("File does not exist.");
             throw new GitletException();
         }
         boolean removedIndicator = false;
-        if (headFiles != null && headFiles.containsKey(filename)) {
-            _untracked.add(filename);
-            File gone = new File(filename);
-            Utils.restrictedDelete(gone);
+        if (tracked) {
+            _index.stageRemoval(filename);
+            Utils.restrictedDeletePath(filename);
+            _index.forget(filename);
             removedIndicator = true;
         }
-        if (_stagingArea.containsKey(filename)) {
-            _stagingArea.remove(filename);
+        if (_index.staged().containsKey(filename)) {
+            _index.unstage(filename);
             removedIndicator = true;
         }
         if (!removedIndicator) {
@@ -361,7 +362,7 @@ public class Gitlet implements Serializable {
 
     /** Return head commit. */
     private Commit acquireHeadCommit() {
-        String headHash = _branches.get(_head);
+        String headHash = _refs.get(_refs.head());
         Commit headCommit = convertHashToCommit(headHash);
         return headCommit;
     }
@@ -370,12 +371,12 @@ public class Gitlet implements Serializable {
      * @param branchname Branch name in English.
      */
     public void rmBranch(String branchname) {
-        if (_head.equals(branchname)) {
+        if (_refs.head().equals(branchname)) {
             Utils.message("Cannot remove the current branch.");
             throw new GitletException();
         }
-        if (_branches.containsKey(branchname)) {
-            _branches.remove(branchname);
+        if (_refs.contains(branchname)) {
+            _refs.remove(branchname);
         } else {
             Utils.message("A branch with that name does not exist.");
             throw new GitletException();
@@ -390,57 +391,69 @@ public class Gitlet implements Serializable {
      * @param msg Filename in English.
      */
     public void find(String msg) {
-        File[] allCommitFiles = new File(".gitlet/commitLog").listFiles();
-        boolean foundFile = false;
-        String fileHash;
-        for (File file : allCommitFiles) {
-            fileHash = file.getName();
-            Commit commit = convertHashToCommit(fileHash);
-            if (commit.getMsg().equals(msg)) {
-                System.out.println(file.getName());
-                foundFile = true;
-            }
+        List<String> found = findIds(msg);
+        for (String id : found) {
+            System.out.println(id);
         }
-        if (!foundFile) {
+        if (found.isEmpty()) {
             Utils.message("Found no commit with that message.");
             throw new GitletException();
         }
     }
 
+    /** Return the IDs of the commits with message MSG.
+     * @param msg commit message.
+     * @return commit IDs, in commit-graph order.**/
+    List<String> findIds(String msg) {
+        CommitGraph graph = graph();
+        List<String> result = new ArrayList<>();
+        for (int pos = 0; pos < graph.size(); pos += 1) {
+            if (graph.message(pos).equals(msg)) {
+                result.add(graph.id(pos));
+            }
+        }
+        return result;
+    }
+
     /** USAGE: java gitlet.Main status
      * Display all branches (head starred).
      * Display all staged files.
      * Display all removed files (from next commit)
      * Display all MODIFIED BUT NOT STAGED files.
      * Display all UNTRACKED files.
+     * The last two sections come from one parallel scan of the
+     * working directory (see StatusScan).
      */
     public void status() {
+        Repository.Status status = statusReport();
         System.out.println("=== Branches ===");
-        printAllBranches();
+        for (String branch : status.branches()) {
+            if (branch.equals(status.currentBranch())) {
+                System.out.println("*" + branch);
+            } else {
+                System.out.println(branch);
+            }
+        }
         System.out.println();
         System.out.println("=== Staged Files ===");
-        printStagedFiles();
+        printLines(status.staged());
         System.out.println();
         System.out.println("=== Removed Files ===");
-        printRemovedFiles();
+        printLines(status.removed());
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-        printUnstagedMods();
+        for (Map.Entry<String, String> mod : status.modified().entrySet()) {
+            System.out.println(mod.getKey() + " (" + mod.getValue() + ")");
+        }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        printUntrackedFiles();
+        printLines(status.untracked());
         System.out.println();
     }
 
-    /**EXTRA CREDIT. <p></p>
-     *  Print all untracked files in the repo. **/
-    private void printUntrackedFiles() {
-    }
-    /** EXTRA CREDIT. <p>
-     * </p>
-     * Print all modified but unstaged
-     *  files in the repo.
-     *  A file qualifies for this if it is: <p></p>
+    /** Return the sections status prints. <p></p>
+     *  EXTRA CREDIT. <p></p>
+     *  A file is modified but not staged if it is: <p></p>
      *  Tracked in the current commit,
      *  changed in the working directory, but not staged <p></p>
      *  Staged for addition, but with different contents
@@ -449,51 +462,46 @@ public class Gitlet implements Serializable {
      *  in the working directory <p></p>
      *  Not staged for removal, but tracked in the current
      *  commit and deleted from the working directory.
-     *  **/
-    private void printUnstagedMods() {
-        if (!_unstagedMods.isEmpty()) {
-            for (String um : _unstagedMods.keySet()) {
-                System.out.println(um + "(" + _unstagedMods.get(um) + ")");
-            }
-        }
+     *  @return status.**/
+    Repository.Status statusReport() {
+        StatusScan scan = new StatusScan(
+                new File(System.getProperty("user.dir")),
+                acquireHeadCommit().getFiles(), _index);
+        String[] branchnames = allBranches();
+        Arrays.sort(branchnames);
+        String[] stagedFiles = stagingAreaFiles();
+        Arrays.sort(stagedFiles);
+        return new Repository.Status(Arrays.asList(branchnames),
+                _refs.head(), Arrays.asList(stagedFiles),
+                new ArrayList<>(_index.removed()), scan.modifications(),
+                scan.untracked());
     }
-    /** Print all removed files in the repo. **/
-    private void printRemovedFiles() {
-        String[] untrackedFiles =
-                _untracked.toArray(new String[_untracked.size()]);
-        Arrays.sort(_untracked.toArray());
-        for (String removed : _untracked) {
-            System.out.println(removed);
+
+    /** Print each of LINES on a line of its own.
+     * @param lines lines to print.**/
+    private void printLines(List<String> lines) {
+        for (String line : lines) {
+            System.out.println(line);
         }
     }
 
-    /** Print all staged files in the repo. **/
-    private void printStagedFiles() {
-        String[] stagedFiles = stagingAreaFiles();
-        Arrays.sort(stagedFiles);
-        for (String staged : stagedFiles) {
-            System.out.println(staged);
-        }
+    /** Return the name of the current branch.
+     * @return branch name.**/
+    String currentBranch() {
+        return _refs.head();
     }
 
-    /** Print all branches in the repo. **/
-    private void printAllBranches() {
-        String[] branchnames = allBranches();
-        Arrays.sort(branchnames);
-        for (String branch : branchnames) {
-            if (_head.equals(branch)) {
-                System.out.println("*" + branch);
-            } else {
-                System.out.println(branch);
-            }
-        }
+    /** Return the ID of the head commit.
+     * @return full commit ID.**/
+    String headId() {
+        return _refs.get(_refs.head());
     }
 
     /** Create branch with given name.
      * @param branchname given branch name**/
     public void branch(String branchname) {
-        if (!_branches.containsKey(branchname)) {
-            _branches.put(branchname, acquireHeadCommit().getID());
+        if (!_refs.contains(branchname)) {
+            _refs.put(branchname, acquireHeadCommit().getID());
         } else {
             Utils.message("A branch with that name already exists.");
             throw new GitletException();
@@ -502,56 +510,63 @@ public class Gitlet implements Serializable {
 
     /** USAGE: java gitlet.Main reset [commit id]
      * Acquire commit given Hash ID. Get full ID from abbreviation if needed.
-     * REMOVE ALL tracked files not in that commit.
+     * REMOVE ALL tracked files not in that commit, and write only
+     * those that differ from it (see syncWorkingTree).
      * Move head pointer to given commit.
      * Clear staging area.
      * @param commitID commit UID
      * **/
     public void reset(String commitID) {
         Commit givenCommit = convertHashToCommit(fullHash(commitID));
-        HashMap<String, Blob> givenFiles = givenCommit.getFiles();
-        File workingDir = new File(System.getProperty("user.dir"));
-        untrackedInWay(workingDir);
-        File[] wdFiles = workingDir.listFiles();
-        for (File trackedFile : wdFiles) {
-            if (!givenFiles.containsKey(trackedFile.getName())) {
-                Utils.restrictedDelete(trackedFile);
-            }
-        }
-        for (String file : givenFiles.keySet()) {
-            File resetFile = new File(".gitlet/stagingArea/"
-                    + givenFiles.get(file).getID());
-            String contents = Utils.readContentsAsString(resetFile);
-            Utils.writeContents(new File(file), contents);
+        syncWorkingTree(givenCommit);
+        _refs.put(_refs.head(), fullHash(commitID));
+        _index.clear();
+    }
+
+    /** USAGE: java gitlet.Main gc <p></p>
+     * Bundle every commit, and every tree and blob they reference,
+     * into one pack file, storing file versions as deltas against
+     * each other where that saves space.
+     * **/
+    public void gc() {
+        CommitGraph graph = graph();
+        List<String> commitIds = new ArrayList<>();
+        for (int pos = 0; pos < graph.size(); pos += 1) {
+            commitIds.add(graph.id(pos));
         }
-        _branches.put(_head, fullHash(commitID));
-        _stagingArea.clear();
+        store().repack(commitIds);
     }
 
     /** USAGE: java gitlet.Main merge [branch name] <p></p>
      * Merge files from BRANCH into head.
      * Acquire split point commit.
      * Handle files according to files in split commit.
+     * Only files changed on either branch since the split point are
+     * looked at; Tree.diff finds them without reading the subtrees
+     * that both branches left alone.
      * **/
     public void merge(String branch) {
         handleMergeFailures(branch);
-        String scHash = getSPCommit(branch, _head);
+        String scHash = getSPCommit(branch, _refs.head());
         Commit splitCommit = convertHashToCommit(scHash);
-        HashMap<String, Blob> splitFiles = splitCommit.getFiles();
-        String givenBHHash = _branches.get(branch);
+        String givenBHHash = _refs.get(branch);
         Commit givenBH = getHC(branch);
-        HashMap<String, Blob> givenBHFiles = givenBH.getFiles();
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-
-        mergeFileUpdates(branch);
+        Set<String> paths = new TreeSet<>(
+                splitCommit.getTree().diff(head.getTree()).keySet());
+        paths.addAll(splitCommit.getTree().diff(givenBH.getTree()).keySet());
+        HashMap<String, String> splitFiles = filesAt(splitCommit, paths);
+        HashMap<String, String> givenBHFiles = filesAt(givenBH, paths);
+        HashMap<String, String> headFiles = filesAt(head, paths);
+
+        mergeFileUpdates(branch, scHash, paths);
         if (scHash.equals(givenBHHash)) {
             Utils.message("Given branch is an ancestor "
                     + "of the current branch.");
             return;
         }
         if (scHash.equals(head.getID())) {
-            _branches.put(_head, givenBHHash);
+            _refs.put(_refs.head(), givenBHHash);
             Utils.message("Current branch fast-forwarded.");
             return;
         }
@@ -561,48 +576,47 @@ public class Gitlet implements Serializable {
             boolean stillThere = givenBHFiles.containsKey(fileName);
             if (!inSC) {
                 if (!inHead && stillThere) {
-                    checkoutCommitFile(_branches.get(branch),  fileName);
-                    _stagingArea.put(fileName, givenBHFiles.get(fileName));
+                    checkoutCommitFile(_refs.get(branch),  fileName);
+                    _index.stage(fileName, givenBHFiles.get(fileName));
                 } else if (editDifs(fileName, givenBHFiles,
                         headFiles)) {
-                    File given = new File(".gitlet/stagingArea/"
-                            + givenBHFiles.get(fileName).getID());
-                    File curr = new File(".gitlet/stagingArea/"
-                            + headFiles.get(fileName).getID());
-                    String currentFC = Utils.readContentsAsString(curr);
-                    String givenFC = Utils.readContentsAsString(given);
+                    String currentFC = blobAsString(headFiles.get(fileName));
+                    String givenFC = blobAsString(givenBHFiles.get(fileName));
                     String cfcReplacement = formatConflict(currentFC,
                             givenFC);
-                    Utils.writeContents(new File(fileName), cfcReplacement);
+                    Utils.writeContents(parentsMade(fileName),
+                            cfcReplacement);
                     add(fileName);
                     Utils.message("Encountered a merge conflict.");
                 }
             }
         }
-        checkHead(branch);
+        checkHead(branch, scHash, paths);
         String[] parents = new String[] {acquireHeadCommit().getID(),
-                _branches.get(branch)};
-        mergeCommit("Merged " + branch + " into " + _head + ".", parents);
+                _refs.get(branch)};
+        mergeCommit("Merged " + branch + " into " + _refs.head() + ".",
+                parents);
     }
 
     /** Check head files now (for merge)
-     * @param branch given branch name.**/
-    private void checkHead(String branch) {
-        String scHash = getSPCommit(branch, _head);
+     * @param branch given branch name.
+     * @param scHash split point commit ID.
+     * @param paths files changed on either branch since the split.**/
+    private void checkHead(String branch, String scHash, Set<String> paths) {
         Commit splitCommit = convertHashToCommit(scHash);
-        HashMap<String, Blob> splitFiles = splitCommit.getFiles();
-        String givenBHHash = _branches.get(branch);
+        HashMap<String, String> splitFiles = filesAt(splitCommit, paths);
+        String givenBHHash = _refs.get(branch);
         Commit givenBH = getHC(branch);
-        HashMap<String, Blob> givenBHFiles = givenBH.getFiles();
+        HashMap<String, String> givenBHFiles = filesAt(givenBH, paths);
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
+        HashMap<String, String> headFiles = filesAt(head, paths);
         for (String fileName : headFiles.keySet()) {
             boolean inSC = splitFiles.containsKey(fileName);
             boolean stillThere = headFiles.containsKey(fileName);
             boolean inGiven = givenBHFiles.containsKey(fileName);
             if (!inSC && !inGiven) {
-                checkoutCommitFile(_branches.get(branch),  fileName);
-                _stagingArea.put(fileName, givenBHFiles.get(fileName));
+                checkoutCommitFile(_refs.get(branch),  fileName);
+                _index.stage(fileName, givenBHFiles.get(fileName));
             }
             if (inSC && !inGiven) {
                 if (!head.getID().equals(splitCommit.getID())) {
@@ -613,11 +627,28 @@ public class Gitlet implements Serializable {
             }
         }
     }
+    /** Return the blob IDs that COMMIT has for those of PATHS it has,
+     * reading only the subtrees those paths are in.
+     * @param commit commit.
+     * @param paths file paths.
+     * @return path -> blob ID map.**/
+    private HashMap<String, String> filesAt(Commit commit, Set<String> paths) {
+        HashMap<String, String> result = new HashMap<>();
+        Tree tree = commit.getTree();
+        for (String path : paths) {
+            String id = tree.get(path);
+            if (id != null) {
+                result.put(path, id);
+            }
+        }
+        return result;
+    }
+
     /** Helper method that gets head commit of BRANCHNAME.
      * @param branchname given branch name
      * @return pointer to head commit of that branch.**/
     private Commit getHC(String branchname) {
-        String hash = _branches.get(branchname);
+        String hash = _refs.get(branchname);
         hash = fullHash(hash);
         Commit c = convertHashToCommit(hash);
         return c;
@@ -630,11 +661,11 @@ public class Gitlet implements Serializable {
             Utils.message("You have uncommitted changes.");
             throw new GitletException();
         }
-        if (!_branches.containsKey(branchname)) {
+        if (!_refs.contains(branchname)) {
             Utils.message("A branch with that name does not exist.");
             throw new GitletException();
         }
-        if (_head.equals(branchname)) {
+        if (_refs.head().equals(branchname)) {
             Utils.message("Cannot merge a branch with itself.");
             throw new GitletException();
         }
@@ -645,17 +676,19 @@ public class Gitlet implements Serializable {
      * been changed in the given branch and the current branch
      * and take action accordingly.
      * @param givenBranchName given branch we want to merge with.
+     * @param scHash split point commit ID.
+     * @param paths files changed on either branch since the split.
      * **/
-    private void mergeFileUpdates(String givenBranchName) {
-        Commit splitCommit =
-                convertHashToCommit(getSPCommit(givenBranchName, _head));
-        HashMap<String, Blob> splitFiles = splitCommit.getFiles();
+    private void mergeFileUpdates(String givenBranchName, String scHash,
+                                  Set<String> paths) {
+        Commit splitCommit = convertHashToCommit(scHash);
+        HashMap<String, String> splitFiles = filesAt(splitCommit, paths);
 
         Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
+        HashMap<String, String> headFiles = filesAt(head, paths);
 
-        Commit givenBH = convertHashToCommit(_branches.get(givenBranchName));
-        HashMap<String, Blob> givenBHFiles = givenBH.getFiles();
+        Commit givenBH = convertHashToCommit(_refs.get(givenBranchName));
+        HashMap<String, String> givenBHFiles = filesAt(givenBH, paths);
 
         File workingDir = new File(System.getProperty("user.dir"));
         untrackedInWay(workingDir);
@@ -667,12 +700,12 @@ public class Gitlet implements Serializable {
             boolean headModded = editDifs(fileName,
                     splitFiles, headFiles);
             if (!headModded && !givenBHFiles.containsKey(fileName)) {
-                Utils.restrictedDelete(new File(fileName));
+                Utils.restrictedDeletePath(fileName);
                 rm(fileName);
                 continue;
             }
             if (!headModded && givenModded) {
-                checkoutCommitFile(_branches.get(givenBranchName), fileName);
+                checkoutCommitFile(_refs.get(givenBranchName), fileName);
                 add(fileName);
             }
             if (headModded && givenModded) {
@@ -684,38 +717,28 @@ public class Gitlet implements Serializable {
     }
 
     /** Handles a merge conflict at a given BRANCHNAME with File FILENAME.
-     * We need 3 commits: Split point, current head, and given branch head.
+     * We need 2 commits: current head and given branch head.
      * @param branchName messed up branch (one we try to merge with).
      * @param fileName merge-conflicted file [name] **/
     private void handleMergeConflict(String branchName, String fileName) {
-        String splitHash = getSPCommit(branchName, _head);
-        Commit splitPoint = convertHashToCommit(splitHash);
-        HashMap<String, Blob> splitFiles = splitPoint.getFiles();
-        Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-        Commit givenBH = convertHashToCommit(_branches.get(branchName));
-        HashMap<String, Blob> givenBHFiles = givenBH.getFiles();
+        String headId = acquireHeadCommit().getTree().get(fileName);
+        Commit givenBH = convertHashToCommit(_refs.get(branchName));
+        String givenId = givenBH.getTree().get(fileName);
         String currentBranchFileContents;
         String givenBHFileContents;
-        if (headFiles.containsKey(fileName)) {
-            File currentBranchFile = new File(".gitlet/stagingArea/"
-                    + headFiles.get(fileName).getID());
-            currentBranchFileContents =
-                    Utils.readContentsAsString(currentBranchFile);
+        if (headId != null) {
+            currentBranchFileContents = blobAsString(headId);
         } else {
             currentBranchFileContents = "";
         }
-        if (givenBHFiles.containsKey(fileName)) {
-            File givenBHFile = new File(".gitlet/stagingArea/"
-                    + givenBHFiles.get(fileName).getID());
-            givenBHFileContents =
-                    Utils.readContentsAsString(givenBHFile);
+        if (givenId != null) {
+            givenBHFileContents = blobAsString(givenId);
         } else {
             givenBHFileContents = "";
         }
         String cfcReplacement = formatConflict(currentBranchFileContents,
                 givenBHFileContents);
-        Utils.writeContents(new File(fileName), cfcReplacement);
+        Utils.writeContents(parentsMade(fileName), cfcReplacement);
         add(fileName);
         Utils.message("Encountered a merge conflict.");
     }
@@ -736,25 +759,23 @@ public class Gitlet implements Serializable {
      * KEY: Compares working directory files to head files.
      * @param wdFile working directory file. **/
     private void untrackedInWay(File wdFile) {
-        Commit head = acquireHeadCommit();
-        HashMap<String, Blob> headFiles = head.getFiles();
-        File[] workingDirFiles = wdFile.listFiles();
-        for (File f : workingDirFiles) {
-            if (headFiles == null) {
-                if (workingDirFiles.length > 1) {
-                    Utils.message("Therer is an untracked file in the way;"
-                            + " delete it or add it first.");
-                    throw new GitletException();
-                }
-            } else {
-                String filename = f.getName();
-                boolean notTracked = !headFiles.containsKey(filename);
-                boolean notStaged = !_stagingArea.containsKey(filename);
-                if (notTracked && notStaged && !filename.equals(".gitlet")) {
-                    Utils.message("There is an untracked file in the way;"
-                            + " delete it or add it first.");
-                    throw new GitletException();
-                }
+        untrackedInWay(Utils.plainFilesUnder(wdFile),
+                acquireHeadCommit().getFiles());
+    }
+
+    /** Error if any of the working files WDFILES is neither tracked in
+     * HEADFILES nor staged.
+     * @param wdFiles paths of the working files.
+     * @param headFiles files of the head commit. **/
+    private void untrackedInWay(List<String> wdFiles,
+                                Map<String, String> headFiles) {
+        for (String filename : wdFiles) {
+            boolean notTracked = !headFiles.containsKey(filename);
+            boolean notStaged = !_index.staged().containsKey(filename);
+            if (notTracked && notStaged) {
+                Utils.message("There is an untracked file in the way;"
+                        + " delete it or add it first.");
+                throw new GitletException();
             }
         }
     }
@@ -766,7 +787,7 @@ public class Gitlet implements Serializable {
      * @return if untracked and an issue.
      */
     private boolean isUntrackedSimple(File f, String branchname) {
-        boolean notStaged = !_stagingArea.containsKey(f);
+        boolean notStaged = !_index.staged().containsKey(f);
         boolean headUntracked = acquireHeadCommit().getFiles().containsKey(f);
         boolean givenTracked = getHC(branchname).getFiles().containsKey(f);
         return notStaged && headUntracked && givenTracked;
@@ -779,11 +800,11 @@ public class Gitlet implements Serializable {
      * @param files1 first set of files to check.
      * @param files2 second set of files (to check)
      * @return whether there's a editing difference.**/
-    private boolean editDifs(String filename, HashMap<String, Blob> files1,
-                             HashMap<String, Blob> files2) {
+    private boolean editDifs(String filename, HashMap<String, String> files1,
+                             HashMap<String, String> files2) {
         if (files1.containsKey(filename) && files2.containsKey(filename)) {
-            String hashF1 = files1.get(filename).getID();
-            String hashF2 = files2.get(filename).getID();
+            String hashF1 = files1.get(filename);
+            String hashF2 = files2.get(filename);
             if (!hashF1.equals(hashF2)) {
                 return true;
             }
@@ -795,48 +816,20 @@ public class Gitlet implements Serializable {
     }
 
     /** Return split point commit (SHA-1 ID)
-     * of BRANCH1 and BRANCH2.
-     * @param branch1 first branch hash.
-     * @param branch2 second branch hash.
+     * of BRANCH1 and BRANCH2: their best common ancestor,
+     * following every parent of merge commits.
+     * Computed once per merge and passed to the helpers.
+     * @param branch1 first branch name.
+     * @param branch2 second branch name.
      * @return Split point commit **/
     private String getSPCommit(String branch1, String branch2) {
-        ArrayList<String> branch1Commits;
-        ArrayList<String> branch2Commits;
-        branch1Commits = getAllCommits(branch1);
-        branch2Commits = getAllCommits(branch2);
-        String common = findCommonCommit(branch1Commits, branch2Commits);
-        return common;
-    }
-
-    /** Get all commits given BRANCHNAME, from head to UFC.
-     *
-     * @param branchname branch name
-     * @return arraylist of all commits
-     */
-    private ArrayList<String> getAllCommits(String branchname) {
-        ArrayList<String> allCommits = new ArrayList<String>();
-        String commitPtr = _branches.get(branchname);
-        while (!commitPtr.equals("") && commitPtr != null) {
-            allCommits.add(commitPtr);
-            commitPtr = convertHashToCommit(commitPtr).getFirstParent();
-        }
-        return allCommits;
-    }
-
-    /** Given two arraylists of commits IDs,
-     * return the first common commit (hash ID)
-     * among them.
-     * @param branch1Commits list of all commits in first branch.
-     * @param branch2Commits list of all commits in second branch.
-     * @return common commit (SHA-1 ID).**/
-    private String findCommonCommit(ArrayList<String> branch1Commits,
-                                    ArrayList<String> branch2Commits) {
-        for (String commit : branch1Commits) {
-            if (branch2Commits.contains(commit)) {
-                return commit;
-            }
+        CommitGraph graph = graph();
+        int base = graph.mergeBase(graph.position(_refs.get(branch1)),
+                graph.position(_refs.get(branch2)));
+        if (base == CommitGraph.NONE) {
+            return "";
         }
-        return "";
+        return graph.id(base);
     }
 
 
@@ -845,7 +838,15 @@ public class Gitlet implements Serializable {
      * @return if untracked files are
      * in current directory or not.**/
     private boolean untrackedFilesExist() {
-        return !_untracked.isEmpty();
+        return !_index.removed().isEmpty();
+    }
+
+    /** Return contents of the blob with ID, as a string.
+     * @param id blob ID
+     * @return blob contents as string.
+     */
+    private String blobAsString(String id) {
+        return new String(store().readBlob(id), StandardCharsets.UTF_8);
     }
 
     /** Return contents of filename, if it exists.
@@ -861,57 +862,55 @@ public class Gitlet implements Serializable {
      * in staging area or not.
      */
     private boolean stagedFilesExist() {
-        return _stagingArea.size() > 0;
+        return _index.staged().size() > 0;
     }
 
     /** Creates the .gitlet file and associated subdirectories. **/
     private void createDirectories() {
         File gitlet = new File(".gitlet");
         gitlet.mkdir();
-        File commitLog = new File(".gitlet/commitLog");
-        commitLog.mkdir();
-        File stage = new File(".gitlet/stagingArea");
-        stage.mkdir();
+        store().createDirectories();
         File untracked = new File(".gitlet/untracked");
         untracked.mkdir();
         File merge = new File(".gitlet/merge");
         merge.mkdir();
     }
 
-    /** Serializes Commit COMMIT and
-     * writes to a UNIQUE filepath in gitlet/commitLog.**/
-    private void serializeAndWrite(Commit commit) {
-        File fp = new File(".gitlet/commitLog/" + fullHash(commit.getID()));
-        byte[] serializedCommit = Utils.serialize(commit);
-        Utils.writeContents(fp, serializedCommit);
+    /** Write COMMIT to the object store and record it in the
+     * commit-graph and ID index.
+     * @param commit new commit.**/
+    private void writeCommit(Commit commit) {
+        store().writeCommit(commit);
+        graph().add(commit);
+        ids().add(commit.getID());
     }
 
-    /** Write commit object to commit log filepath WITHOUT serializing.
-     * @param commit Commit to write. **/
-    private void simpleWrite(Commit commit) {
-        File fp = new File(".gitlet/commitLog/" + fullHash(commit.getID()));
-        Utils.writeObject(fp, commit);
+    /** Return the sorted commit ID index of this repo,
+     * opening it if needed.
+     * @return ID index.**/
+    private IdIndex ids() {
+        if (_ids == null) {
+            _ids = new IdIndex(new File(".gitlet"), graph());
+        }
+        return _ids;
     }
-    /** Helper method for pasting all files in commitFiles over to
-     * working directory.
-     * @param files given branch files
-     * @param wdFiles working dir files**/
-    private void pasteFromBranch(HashMap files, File[] wdFiles) {
-        String filename;
-        if (files == null) {
-            nuke(wdFiles);
+
+    /** Return the commit-graph of this repo, opening it if needed.
+     * @return commit-graph.**/
+    private CommitGraph graph() {
+        if (_graph == null) {
+            _graph = new CommitGraph(new File(".gitlet"), store());
         }
-        syncFilesWithBranch(files, wdFiles);
+        return _graph;
     }
 
-    /** Helper method (for pasteFromBranch)
-     * to delete all files in working directory.
-     * @param wdFiles working directory files.
-     */
-    private void nuke(File[] wdFiles) {
-        for (File gone : wdFiles) {
-            Utils.restrictedDelete(gone);
+    /** Return the object store of this repo, opening it if needed.
+     * @return object store.**/
+    private ObjectStore store() {
+        if (_store == null) {
+            _store = new ObjectStore(new File(".gitlet"));
         }
+        return _store;
     }
 
     /**Returns the SHA-1 hashed form of File FILE.
@@ -919,27 +918,67 @@ public class Gitlet implements Serializable {
      * In comparison, blob.hashMe hashes the file name
      * and byte-read file contents
      * for a few extra layers of "security".
+     * The file is streamed rather than read into a String.
      * @param file File to hash.
      * @return (UNIQUE) hash for FILE.**/
     public String hashThisFile(File file) {
-        String blobb = Utils.readContentsAsString(file);
-        return Utils.sha1(blobb);
+        MessageDigest md = Utils.newSha1();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Blob.updateRoundTrip(md, in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(md.digest());
     }
 
-    /** Helper method (for pasteFromBranch)
-     * to delete all files in working directory that are NOT
-     * valid keys in FILES (our desired branch files).
-     * @param files files
-     * @param wdFiles working dir files
-     */
-    private void syncFilesWithBranch(HashMap files, File[] wdFiles) {
-        String filename;
-        for (File file : wdFiles) {
-            filename = file.getName();
-            if (!files.containsKey(filename) && !filename.equals(".gitlet")) {
-                Utils.restrictedDelete(file);
+    /** HELPER method (for checkout and reset): make the working tree
+     * hold exactly the files of TARGET, after checking that no untracked
+     * file is in the way. Only what differs is touched: the head and
+     * TARGET are compared with Tree.diff, working files TARGET lacks are
+     * deleted, and a file is only written if it is missing or its blob
+     * ID (from the stat cache where it can vouch) is not TARGET's.
+     * Unchanged files keep their modification times. Files are written
+     * in parallel by a Materializer.
+     * @param target commit to check out.**/
+    private void syncWorkingTree(Commit target) {
+        Tree head = acquireHeadCommit().getTree();
+        HashMap<String, String> headFiles = head.getFiles();
+        List<String> wdFiles = Utils.plainFilesUnder(
+                new File(System.getProperty("user.dir")));
+        untrackedInWay(wdFiles, headFiles);
+        /* Turn a copy of the head's files into TARGET's. */
+        HashMap<String, String> targetFiles = new HashMap<>(headFiles);
+        for (Map.Entry<String, String> change
+                 : head.diff(target.getTree()).entrySet()) {
+            if (change.getValue() == null) {
+                targetFiles.remove(change.getKey());
+            } else {
+                targetFiles.put(change.getKey(), change.getValue());
+            }
+        }
+        for (String name : wdFiles) {
+            if (!targetFiles.containsKey(name)) {
+                Utils.restrictedDeletePath(name);
+                _index.forget(name);
+            }
+        }
+        Materializer writer = new Materializer(store());
+        for (Map.Entry<String, String> file : targetFiles.entrySet()) {
+            String name = file.getKey();
+            String id = file.getValue();
+            Index.Stat stat = Index.Stat.of(new File(name));
+            String current = _index.cachedId(name, stat);
+            if (current == null && stat != null) {
+                current = new Blob(name).getID();
+                if (current.equals(id)) {
+                    _index.record(name, stat, id);
+                }
+            }
+            if (!id.equals(current)) {
+                writer.write(name, id);
             }
         }
+        finishWrites(writer, targetFiles);
     }
 
     /** Checks for identicality of files by content.
@@ -947,50 +986,155 @@ public class Gitlet implements Serializable {
      * @param f2 file2
      * @return whether file 1 is the same exact file as file 2**/
     private boolean filesEq(File f1, File f2) {
-        String b1Hash = new Blob(f1.getName()).getID();
-        String b2Hash = new Blob(f2.getName()).getID();
+        String b1Hash = blobId(f1.getName());
+        String b2Hash = blobId(f2.getName());
         return b1Hash.equals(b2Hash);
     }
 
+    /** Return the blob ID of working file NAME, hashing it only if the
+     * index cannot vouch that it is unchanged.
+     * @param name file name.
+     * @return blob ID.**/
+    private String blobId(String name) {
+        Index.Stat stat = Index.Stat.of(new File(name));
+        String id = _index.cachedId(name, stat);
+        if (id == null) {
+            id = new Blob(name).getID();
+        }
+        return id;
+    }
+
+    /** Write the contents of blob ID to working file NAME, streaming
+     * them unchanged (see Materializer.writeFile), and record its new
+     * metadata in the index.
+     * @param name file name.
+     * @param id blob ID.**/
+    private void writeWorkingFile(String name, String id) {
+        _index.record(name, Materializer.writeFile(store(), name, id), id);
+    }
+
+    /** Wait for the writes queued on WRITER and record the metadata of
+     * the written files in the index, which FILES maps to the blob IDs
+     * they were written from.
+     * @param writer materializer.
+     * @param files path -> blob ID map of at least the written files.**/
+    private void finishWrites(Materializer writer, Map<String, String> files) {
+        Map<String, Index.Stat> written = writer.finish();
+        for (Map.Entry<String, Index.Stat> file : written.entrySet()) {
+            _index.record(file.getKey(), file.getValue(),
+                    files.get(file.getKey()));
+        }
+    }
+
+    /** Return working file NAME, creating the directories it is in if
+     * they are missing.
+     * @param name file path.
+     * @return file.**/
+    private static File parentsMade(String name) {
+        File file = new File(name);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        return file;
+    }
+
     /** Return a list of staging area file keys.
      * @return stage keys array**/
     private String[] stagingAreaFiles() {
-        return _stagingArea.keySet().toArray(new String[_stagingArea.size()]);
+        return _index.staged().keySet().toArray(new String[0]);
     }
 
     /** Return a list of all branch names.
      * @return branch names array**/
     private String[] allBranches() {
-        return _branches.keySet().
-                toArray(new String[_branches.size()]);
+        return _refs.branches().toArray(new String[0]);
+    }
+
+
+    /** Write out the refs and index, if this command changed them. **/
+    void save() {
+        _refs.write();
+        _index.write();
     }
 
+    /** Remember the refs and staging area as they are now, so that a
+     * failed command of a batch can be undone by rollback. **/
+    void checkpoint() {
+        _refs.checkpoint();
+        _index.checkpoint();
+    }
+
+    /** Undo the changes to the refs and staging area since the last
+     * checkpoint. **/
+    void rollback() {
+        _refs.rollback();
+        _index.rollback();
+    }
+
+    /** Return the repository whose state is read from IN, the REPO
+     * state file of an older version of gitlet.
+     * @param in state written by an older version.
+     * @return repository, with refs and index not yet written.**/
+    static Gitlet decode(Codec.Input in) {
+        Gitlet repo = new Gitlet(new Refs(new File(".gitlet")),
+                new Index(new File(".gitlet")));
+        String head = in.readString();
+        in.readString();
+        repo.restore(head, in.readIdMap(), in.readIdMap(), in.readStrings());
+        return repo;
+    }
+
+    /** Read the state of a repository Java-serialized by an older
+     * version of gitlet from IN.
+     * @param in serialized repository.**/
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _refs = new Refs(new File(".gitlet"));
+        _index = new Index(new File(".gitlet"));
+        restore((String) fields.get("_head", null),
+                (Map<String, String>) fields.get("_branches", null),
+                (Map<String, String>) fields.get("_stagingArea", null),
+                (List<String>) fields.get("_untracked", null));
+    }
+
+    /** Set the refs and index from the state of an older version:
+     * HEAD branch HEAD, branch heads BRANCHES, files staged for
+     * addition STAGED and files staged for removal REMOVED.
+     * @param head HEAD branch name.
+     * @param branches branch name -> commit ID map.
+     * @param staged file name -> blob ID map.
+     * @param removed file names.**/
+    void restore(String head, Map<String, String> branches,
+                 Map<String, String> staged, List<String> removed) {
+        _refs.setHead(head);
+        for (String branch : branches.keySet()) {
+            _refs.put(branch, branches.get(branch));
+        }
+        for (String name : staged.keySet()) {
+            _index.stage(name, staged.get(name));
+        }
+        for (String name : removed) {
+            _index.stageRemoval(name);
+        }
+    }
 
     /**** END HELPER FUNCTIONS ****/
 
-    /** Staging Area, which maps filenames (SHA-1 HASHES)
-     * to corresponding blobs. **/
-    private HashMap<String, Blob> _stagingArea;
-    /** Head pointer of commit tree.
-     * Head is actually a BRANCH name, "master" by default.**/
-    private String _head;
-    /** Represents branches in Gitlet.
-     * Will map a branch's name to the appropriate head commit (hashcode).
-     * Note we ONLY need to map to the head because we can
-     * access all of its parents, and thus the entire branch,
-     * from that head.**/
-    private HashMap<String, String> _branches;
-    /**current branch.**/
-    private String _currentbranch;
-    /** Files that user has removed with the rm command.**/
-    private ArrayList<String> _removed;
-    /** Files user has selected to not be added to next commit. */
-    private ArrayList<String> _untracked;
-    /** Files user has edited but
-     * are still unstaged for whatever reason.*/
-    private HashMap<String, String> _unstagedMods;
-    /** Number of edits made (to head commit).
-     * This attribute should only be needed
-     * when REMOVE (rm) is called. **/
-    private int _numEdits;
+    /** Branches and HEAD. **/
+    private transient Refs _refs;
+    /** Staging area. **/
+    private transient Index _index;
+    /** Object store holding commits, trees and blobs. **/
+    private transient ObjectStore _store;
+    /** Commit-graph used for history walks. **/
+    private transient CommitGraph _graph;
+    /** Sorted ID index used to resolve abbreviated commit IDs. **/
+    private transient IdIndex _ids;
+    /** Serialization version, fixed so repositories Java-serialized by
+     * the versions with gc but before Codec can still be read. Earlier
+     * versions wrote another one and are read by Baseline. **/
+    private static final long serialVersionUID = 7491493953627992414L;
 }
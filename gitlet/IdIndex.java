@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Sorted index of every commit ID, for resolving abbreviated IDs
+ * by binary search instead of listing the commit log. <p></p>
+ * .gitlet/commit-index is a fan-out table of FANOUT ints (entry i is
+ * the number of IDs whose first byte is at most i) followed by the
+ * sorted binary IDs. New IDs are appended to .gitlet/commit-index-new
+ * and folded into the sorted file once there are MERGE_THRESHOLD of
+ * them, so a commit never has to rewrite the whole index.
+ * @author Kevin Moy**/
+
+class IdIndex {
+
+    /** Number of fan-out table entries (one per first byte). **/
+    static final int FANOUT = 256;
+    /** Number of unsorted IDs kept before rewriting the sorted file. **/
+    static final int MERGE_THRESHOLD = 256;
+
+    /** Open the ID index of the .gitlet directory GITLETDIR,
+     * building it from GRAPH if it does not exist yet.
+     * @param gitletDir the .gitlet directory.
+     * @param graph commit-graph listing every commit.**/
+    IdIndex(File gitletDir, CommitGraph graph) {
+        _sortedFile = new File(gitletDir, "commit-index");
+        _newFile = new File(gitletDir, "commit-index-new");
+        _recent = new ArrayList<>();
+        if (_sortedFile.isFile()) {
+            byte[] contents = Utils.readContents(_sortedFile);
+            _fanout = new int[FANOUT];
+            ByteBuffer.wrap(contents).asIntBuffer().get(_fanout);
+            _sorted = Arrays.copyOfRange(contents, 4 * FANOUT,
+                    contents.length);
+            if (_newFile.isFile()) {
+                byte[] added = Utils.readContents(_newFile);
+                for (int i = 0; i < added.length; i += ID_BYTES) {
+                    _recent.add(Arrays.copyOfRange(added, i, i + ID_BYTES));
+                }
+            }
+        } else {
+            _fanout = new int[FANOUT];
+            _sorted = new byte[0];
+            for (int pos = 0; pos < graph.size(); pos += 1) {
+                _recent.add(CommitGraph.toBinary(graph.id(pos)));
+            }
+            rewrite();
+        }
+    }
+
+    /** Record a new commit ID, unless already present.
+     * @param id full commit ID.**/
+    void add(String id) {
+        if (!resolve(id, 1).isEmpty()) {
+            return;
+        }
+        byte[] binary = CommitGraph.toBinary(id);
+        _recent.add(binary);
+        if (_recent.size() >= MERGE_THRESHOLD) {
+            rewrite();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(_newFile, true)) {
+            out.write(binary);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return every full commit ID starting with PREFIX, stopping
+     * after LIMIT matches.
+     * @param prefix abbreviated ID (hex digits).
+     * @param limit maximum number of matches wanted.
+     * @return matching full IDs in sorted order.**/
+    List<String> resolve(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        byte[] nibbles = toNibbles(prefix);
+        if (nibbles == null || nibbles.length > Utils.UID_LENGTH) {
+            return result;
+        }
+        int lo = 0, hi = _sorted.length / ID_BYTES;
+        if (nibbles.length >= 2) {
+            int first = (nibbles[0] << 4) | nibbles[1];
+            lo = first == 0 ? 0 : _fanout[first - 1];
+            hi = _fanout[first];
+        }
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(_sorted, mid * ID_BYTES, nibbles) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < _sorted.length / ID_BYTES
+                 && result.size() < limit
+                 && compare(_sorted, i * ID_BYTES, nibbles) == 0; i += 1) {
+            result.add(CommitGraph.toHex(_sorted, i * ID_BYTES));
+        }
+        for (byte[] id : _recent) {
+            if (result.size() < limit && compare(id, 0, nibbles) == 0) {
+                result.add(CommitGraph.toHex(id, 0));
+            }
+        }
+        return result;
+    }
+
+    /** Fold recently added IDs into the sorted file. **/
+    private void rewrite() {
+        int count = _sorted.length / ID_BYTES + _recent.size();
+        byte[][] all = new byte[count][];
+        int k = 0;
+        for (int i = 0; i < _sorted.length; i += ID_BYTES, k += 1) {
+            all[k] = Arrays.copyOfRange(_sorted, i, i + ID_BYTES);
+        }
+        for (byte[] id : _recent) {
+            all[k] = id;
+            k += 1;
+        }
+        Arrays.sort(all, Arrays::compareUnsigned);
+        _sorted = new byte[count * ID_BYTES];
+        _fanout = new int[FANOUT];
+        for (int i = 0; i < count; i += 1) {
+            System.arraycopy(all[i], 0, _sorted, i * ID_BYTES, ID_BYTES);
+            _fanout[all[i][0] & 0xff] += 1;
+        }
+        for (int i = 1; i < FANOUT; i += 1) {
+            _fanout[i] += _fanout[i - 1];
+        }
+        ByteBuffer out = ByteBuffer.allocate(4 * FANOUT + _sorted.length);
+        out.asIntBuffer().put(_fanout);
+        out.position(4 * FANOUT);
+        out.put(_sorted);
+        Utils.writeContents(_sortedFile, out.array());
+        _recent.clear();
+        _newFile.delete();
+    }
+
+    /** Compare the first NIBBLES.length hex digits of the binary ID at
+     * OFFSET in IDS to NIBBLES.
+     * @param ids array holding binary IDs.
+     * @param offset start of the ID.
+     * @param nibbles hex digit values.
+     * @return negative, zero or positive as for compareTo.**/
+    private static int compare(byte[] ids, int offset, byte[] nibbles) {
+        for (int i = 0; i < nibbles.length; i += 1) {
+            int b = ids[offset + i / 2] & 0xff;
+            int digit = i % 2 == 0 ? b >> 4 : b & 0xf;
+            if (digit != nibbles[i]) {
+                return digit - nibbles[i];
+            }
+        }
+        return 0;
+    }
+
+    /** Return the digit values of hexadecimal string HEX,
+     * or null if HEX is not hexadecimal.
+     * @param hex hex digits.
+     * @return digit values.**/
+    private static byte[] toNibbles(String hex) {
+        byte[] result = new byte[hex.length()];
+        for (int i = 0; i < hex.length(); i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                return null;
+            }
+            result[i] = (byte) digit;
+        }
+        return result;
+    }
+
+    /** Bytes in a binary SHA-1 ID. **/
+    private static final int ID_BYTES = CommitGraph.ID_BYTES;
+
+    /** Sorted index file. **/
+    private File _sortedFile;
+    /** Append-only file of IDs not yet in _sortedFile. **/
+    private File _newFile;
+    /** Fan-out table of _sorted. **/
+    private int[] _fanout;
+    /** Sorted binary IDs. **/
+    private byte[] _sorted;
+    /** Binary IDs added since _sorted was written. **/
+    private List<byte[]> _recent;
+
+}
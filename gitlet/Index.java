@@ -0,0 +1,309 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** The staging area: files staged for addition, mapped to the IDs of
+ * their staged blobs, and files staged for removal. <p></p>
+ * The index also caches the size, modification time, inode and blob ID
+ * of working files whose blob ID gitlet has computed or written, so a
+ * file whose Stat has not changed is known to be unchanged without
+ * reading it. As in git, an entry for a file modified no earlier than
+ * the index was last written is "racy" (the file may have changed again
+ * within the same clock tick) and is not trusted. <p></p>
+ * Kept in .gitlet/index as a Codec encoding of kind Codec.INDEX, which
+ * is only read by commands that look at the staging area and only
+ * written by write when something changed.
+ * @author Kevin Moy**/
+
+class Index {
+
+    /** Open the index of the .gitlet directory GITLETDIR.
+     * @param gitletDir the .gitlet directory.**/
+    Index(File gitletDir) {
+        _file = new File(gitletDir, "index");
+    }
+
+    /** Return the files staged for addition.
+     * @return unmodifiable file name -> blob ID map.**/
+    Map<String, String> staged() {
+        load();
+        return Collections.unmodifiableMap(_staged);
+    }
+
+    /** Return the files staged for removal, in the order they were removed.
+     * @return unmodifiable file names.**/
+    List<String> removed() {
+        load();
+        return Collections.unmodifiableList(_removed);
+    }
+
+    /** Stage NAME for addition with the blob ID.
+     * @param name file name.
+     * @param id blob ID.**/
+    void stage(String name, String id) {
+        load();
+        _staged.put(name, id);
+        _changed = true;
+    }
+
+    /** Unstage NAME for addition, if it is staged.
+     * @param name file name.**/
+    void unstage(String name) {
+        load();
+        _changed |= _staged.remove(name) != null;
+    }
+
+    /** Stage NAME for removal.
+     * @param name file name.**/
+    void stageRemoval(String name) {
+        load();
+        if (!_removed.contains(name)) {
+            _removed.add(name);
+            _changed = true;
+        }
+    }
+
+    /** Unstage NAME for removal, if it is staged.
+     * @param name file name.**/
+    void unstageRemoval(String name) {
+        load();
+        _changed |= _removed.remove(name);
+    }
+
+    /** Return the blob ID recorded for working file NAME, if its
+     * metadata is still STAT and the entry is not racy.
+     * @param name file name.
+     * @param stat current metadata of NAME, or null if it is missing.
+     * @return cached blob ID, or null if NAME must be hashed.**/
+    String cachedId(String name, Stat stat) {
+        load();
+        Entry entry = _entries.get(name);
+        if (stat == null || entry == null || !entry._stat.equals(stat)
+                || stat._mtime >= _writtenAt) {
+            return null;
+        }
+        return entry._id;
+    }
+
+    /** Record that working file NAME, with metadata STAT, has blob ID.
+     * The blob must be in the object store.
+     * @param name file name.
+     * @param stat metadata of NAME, taken before it was read or
+     *             just after it was written.
+     * @param id blob ID of NAME.**/
+    void record(String name, Stat stat, String id) {
+        load();
+        if (stat == null) {
+            forget(name);
+            return;
+        }
+        Entry entry = _entries.get(name);
+        if (entry == null || !entry._stat.equals(stat)
+                || !entry._id.equals(id)) {
+            _entries.put(name, new Entry(stat, id));
+            _changed = true;
+        }
+    }
+
+    /** Drop the cached metadata of working file NAME.
+     * @param name file name.**/
+    void forget(String name) {
+        load();
+        _changed |= _entries.remove(name) != null;
+    }
+
+    /** Unstage everything. **/
+    void clear() {
+        load();
+        _changed |= !_staged.isEmpty() || !_removed.isEmpty();
+        _staged.clear();
+        _removed.clear();
+    }
+
+    /** Remember the staged files as they are now, for rollback. The
+     * cached metadata is not covered: it is true whatever command
+     * recorded it. **/
+    void checkpoint() {
+        load();
+        _savedStaged = new HashMap<>(_staged);
+        _savedRemoved = new ArrayList<>(_removed);
+    }
+
+    /** Undo every staging change since the last checkpoint. **/
+    void rollback() {
+        if (_savedStaged != null) {
+            _staged = _savedStaged;
+            _removed = _savedRemoved;
+            _changed = true;
+            _savedStaged = null;
+            _savedRemoved = null;
+        }
+    }
+
+    /** Write the index out if it changed since it was read. **/
+    void write() {
+        if (!_changed) {
+            return;
+        }
+        Codec.Output out = new Codec.Output(Codec.INDEX);
+        out.writeIdMap(_staged);
+        out.writeStrings(_removed);
+        String[] names = _entries.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        out.writeVarint(names.length);
+        for (String name : names) {
+            Entry entry = _entries.get(name);
+            out.writeString(name);
+            out.writeVarint(entry._stat._size);
+            out.writeVarint(entry._stat._mtime);
+            out.writeVarint(entry._stat._inode);
+            out.writeId(entry._id);
+        }
+        Utils.writeContents(_file, out.toByteArray());
+        _changed = false;
+    }
+
+    /** Read the index file, the first time it is needed. A missing file
+     * is an empty staging area. Synchronized, as cachedId is called from
+     * several threads (see StatusScan and BulkAdd). **/
+    private synchronized void load() {
+        if (_staged != null) {
+            return;
+        }
+        if (_file.isFile()) {
+            Codec.Input in = new Codec.Input(Utils.readContents(_file),
+                    Codec.INDEX);
+            _staged = in.readIdMap();
+            _removed = in.readStrings();
+            _entries = new HashMap<>();
+            int n = in.version() < 2 ? 0 : (int) in.readVarint();
+            for (int i = 0; i < n; i += 1) {
+                String name = in.readString();
+                Stat stat = new Stat(in.readVarint(), in.readVarint(),
+                        in.readVarint());
+                _entries.put(name, new Entry(stat, in.readId()));
+            }
+            _writtenAt = Stat.mtime(_file);
+        } else {
+            _staged = new HashMap<>();
+            _removed = new ArrayList<>();
+            _entries = new HashMap<>();
+        }
+    }
+
+    /** Index file. **/
+    private File _file;
+    /** Files staged for addition, or null until loaded. **/
+    private HashMap<String, String> _staged;
+    /** Files staged for removal, or null until loaded. **/
+    private ArrayList<String> _removed;
+    /** Cached metadata of working files, or null until loaded. **/
+    private HashMap<String, Entry> _entries;
+    /** Modification time of the index file when it was read, in
+     * nanoseconds. Entries for files modified since are racy. **/
+    private long _writtenAt;
+    /** True iff the index changed since it was read or written. **/
+    private boolean _changed;
+    /** Files staged for addition as of the last checkpoint, or null. **/
+    private HashMap<String, String> _savedStaged;
+    /** Files staged for removal as of the last checkpoint, or null. **/
+    private ArrayList<String> _savedRemoved;
+
+    /** The metadata gitlet compares to tell whether a working file
+     * changed: its size, modification time and inode. **/
+    static class Stat {
+
+        /** Metadata with the given SIZE, MTIME and INODE.
+         * @param size length in bytes.
+         * @param mtime modification time in nanoseconds.
+         * @param inode inode number (see of).**/
+        Stat(long size, long mtime, long inode) {
+            _size = size;
+            _mtime = mtime;
+            _inode = inode;
+        }
+
+        /** Return the metadata of FILE, read with a single stat call.
+         * The inode is the hash of the file key, which on Unix covers
+         * both device and inode number.
+         * @param file working file.
+         * @return metadata, or null if FILE is not a plain file.**/
+        static Stat of(File file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        file.toPath(), BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                Object key = attrs.fileKey();
+                return new Stat(attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                        key == null ? 0 : key.hashCode() & 0xffffffffL);
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        /** Return the modification time of FILE in nanoseconds.
+         * @param file existing file.
+         * @return modification time.**/
+        static long mtime(File file) {
+            try {
+                return Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+            } catch (IOException excp) {
+                return 0;
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) obj;
+            return _size == other._size && _mtime == other._mtime
+                && _inode == other._inode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(_size * 31 + _mtime);
+        }
+
+        /** Length in bytes. **/
+        private final long _size;
+        /** Modification time in nanoseconds. **/
+        private final long _mtime;
+        /** Inode number. **/
+        private final long _inode;
+    }
+
+    /** A cached working file: its metadata and blob ID. **/
+    private static class Entry {
+
+        /** An entry for a file with metadata STAT and blob ID.
+         * @param stat file metadata.
+         * @param id blob ID.**/
+        Entry(Stat stat, String id) {
+            _stat = stat;
+            _id = id;
+        }
+
+        /** File metadata. **/
+        private final Stat _stat;
+        /** Blob ID. **/
+        private final String _id;
+    }
+
+}
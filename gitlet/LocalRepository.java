@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/** The Repository in the working directory. <p></p>
+ * Every operation runs on the repository's own thread, so operations
+ * run one at a time in call order; the synchronous ones wait for their
+ * turn. Each reads the refs and index afresh, as a gitlet command does,
+ * and writes them back only if it succeeds. Like the daemon's (see
+ * Daemon.stamp), the object store, commit-graph and ID index are kept
+ * from one operation to the next unless their files changed in between.
+ * Messages printed through Utils.message during an operation are
+ * collected: the last one is the message of a failure.
+ * @author Kevin Moy**/
+
+class LocalRepository implements Repository {
+
+    /** Open the repository in the working directory, after creating it
+     * if CREATE.
+     * @param create whether to run init first.**/
+    LocalRepository(boolean create) {
+        _thread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "gitlet-repository");
+            t.setDaemon(true);
+            _owner = t;
+            return t;
+        });
+        if (create && Main.repoExists()) {
+            close();
+            throw new RepositoryException("A Gitlet version-control "
+                + "system already exists in the current directory");
+        } else if (create) {
+            _create = true;
+            call(r -> null);
+        } else if (!Main.repoExists()) {
+            close();
+            throw new RepositoryException(
+                "Not in an initialized Gitlet directory.");
+        }
+    }
+
+    @Override
+    public void add(String... paths) {
+        if (paths.length == 0) {
+            throw new RepositoryException("Incorrect operands");
+        }
+        call(r -> {
+            r.add(paths);
+            return null;
+        });
+    }
+
+    @Override
+    public String commit(String msg) {
+        return call(r -> {
+            r.commit(msg);
+            return r.headId();
+        });
+    }
+
+    @Override
+    public void rm(String file) {
+        call(r -> {
+            r.rm(file);
+            return null;
+        });
+    }
+
+    @Override
+    public List<CommitInfo> log() {
+        return call(Gitlet::history);
+    }
+
+    @Override
+    public List<CommitInfo> globalLog() {
+        return call(Gitlet::allCommits);
+    }
+
+    @Override
+    public List<String> find(String msg) {
+        return call(r -> r.findIds(msg));
+    }
+
+    @Override
+    public Status status() {
+        return call(Gitlet::statusReport);
+    }
+
+    @Override
+    public String currentBranch() {
+        return call(Gitlet::currentBranch);
+    }
+
+    @Override
+    public String head() {
+        return call(Gitlet::headId);
+    }
+
+    @Override
+    public void checkoutFile(String file) {
+        call(r -> {
+            r.checkoutFile(file);
+            return null;
+        });
+    }
+
+    @Override
+    public void checkoutFile(String commit, String file) {
+        call(r -> {
+            r.checkoutCommitFile(commit, file);
+            return null;
+        });
+    }
+
+    @Override
+    public void checkout(String branch) {
+        join(checkoutAsync(branch));
+    }
+
+    @Override
+    public void branch(String branch) {
+        call(r -> {
+            r.branch(branch);
+            return null;
+        });
+    }
+
+    @Override
+    public void rmBranch(String branch) {
+        call(r -> {
+            r.rmBranch(branch);
+            return null;
+        });
+    }
+
+    @Override
+    public void reset(String commit) {
+        join(resetAsync(commit));
+    }
+
+    @Override
+    public List<String> merge(String branch) {
+        return join(mergeAsync(branch));
+    }
+
+    @Override
+    public void gc() {
+        join(gcAsync());
+    }
+
+    @Override
+    public CompletableFuture<Void> checkoutAsync(String branch) {
+        return submit(r -> {
+            r.checkoutBranch(branch);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> resetAsync(String commit) {
+        return submit(r -> {
+            r.reset(commit);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mergeAsync(String branch) {
+        return submit(r -> {
+            r.merge(branch);
+            return new ArrayList<>(_messages);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> addAsync(String... paths) {
+        if (paths.length == 0) {
+            return CompletableFuture.failedFuture(
+                new RepositoryException("Incorrect operands"));
+        }
+        return submit(r -> {
+            r.add(paths);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> gcAsync() {
+        return submit(r -> {
+            r.gc();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        _thread.shutdown();
+        boolean done = Thread.currentThread() == _owner;
+        while (!done) {
+            try {
+                done = _thread.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException excp) {
+                continue;
+            }
+        }
+    }
+
+    /** Run OP on the repository and return its result, waiting for the
+     * operations called before it.
+     * @param op operation.
+     * @param <T> result type.
+     * @return result of OP.**/
+    private <T> T call(Function<Gitlet, T> op) {
+        if (Thread.currentThread() == _owner) {
+            return run(op);
+        }
+        return join(submit(op));
+    }
+
+    /** Queue OP to run on the repository after the operations called
+     * before it.
+     * @param op operation.
+     * @param <T> result type.
+     * @return future result of OP.**/
+    private <T> CompletableFuture<T> submit(Function<Gitlet, T> op) {
+        return CompletableFuture.supplyAsync(() -> run(op), _thread);
+    }
+
+    /** Run OP on a fresh state of the repository, writing the state back
+     * if OP succeeds. Called on the repository's thread.
+     * @param op operation.
+     * @param <T> result type.
+     * @return result of OP.**/
+    private <T> T run(Function<Gitlet, T> op) {
+        _messages = new ArrayList<>();
+        List<String> previous = Utils.collectMessages(_messages);
+        try {
+            Gitlet repo;
+            if (_create) {
+                repo = new Gitlet();
+                _create = false;
+            } else if (!Main.repoExists()) {
+                throw new RepositoryException(
+                    "Not in an initialized Gitlet directory.");
+            } else {
+                repo = Main.lastRepoState();
+                if (_warm != null && Arrays.equals(_stamp, Daemon.stamp())) {
+                    repo.reuseCaches(_warm);
+                }
+            }
+            T result = op.apply(repo);
+            repo.save();
+            _warm = repo;
+            _stamp = Daemon.stamp();
+            return result;
+        } catch (GitletException excp) {
+            _warm = null;
+            String msg = _messages.isEmpty() ? excp.getMessage()
+                : _messages.get(_messages.size() - 1);
+            throw new RepositoryException(msg);
+        } finally {
+            Utils.collectMessages(previous);
+        }
+    }
+
+    /** Return the result of FUTURE, once done, rethrowing its failure
+     * as it was thrown.
+     * @param future result of an operation.
+     * @param <T> result type.
+     * @return result.**/
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw excp;
+        }
+    }
+
+    /** Runs the operations. **/
+    private final ExecutorService _thread;
+    /** The thread of _thread, once started. **/
+    private volatile Thread _owner;
+    /** True until the repository asked for by init is created. **/
+    private boolean _create;
+    /** Messages of the running operation. **/
+    private List<String> _messages;
+    /** Repository of the last successful operation. **/
+    private Gitlet _warm;
+    /** Stamp of the cached files after the last successful operation. **/
+    private long[] _stamp;
+
+}
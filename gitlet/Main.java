@@ -8,46 +8,142 @@ import java.util.Arrays;
  */
 public class Main {
     /** Number of valid commands.**/
-    private static int numValidCmds = 13;
+    private static int numValidCmds = 14;
     /** Array of valid commands. **/
     private static final String[] VALID_COMMANDS = {"init", "add",
         "commit", "rm", "log", "global-log",
         "find", "status", "checkout", "branch", "rm-branch", "reset",
-        "merge"};
+        "merge", "gc"};
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... If a daemon serves the repository in
+     *  the current directory, the command is run there (see Daemon).
+     *  "batch" runs a whole script of commands (see Batch). A first
+     *  argument of --profile, or a GITLET_PROFILE environment variable,
+     *  reports the time and work of the command (see Profile). */
     public static void main(String... args) {
         try {
-            if (args.length == 0) {
-                Utils.message("Please enter a command.");
-                throw new GitletException();
+            if (args.length > 0 && args[0].equals("daemon")) {
+                daemon(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("batch")) {
+                if (!Batch.run(Arrays.copyOfRange(args, 1, args.length))) {
+                    System.exit(1);
+                }
+                return;
             }
-            String cmd = args[0];
-            String[] cmdParams = Arrays.copyOfRange(args, 1, args.length);
-            if (Arrays.asList(VALID_COMMANDS).contains(cmd)) {
-                if (!repoExists()) {
-                    if (cmd.equals("init")) {
-                        repo = new Gitlet();
-                        File repoInDisk = new File(".gitlet/repo");
-                        Utils.writeObject(repoInDisk, repo);
-                    } else {
-                        Utils.message("Not in an "
-                                + "initialized Gitlet directory.");
-                        throw new GitletException();
-                    }
+            if (Profile.requested() && (args.length == 0
+                    || !args[0].equals(Profile.OPTION))) {
+                String[] profiled = new String[args.length + 1];
+                profiled[0] = Profile.OPTION;
+                System.arraycopy(args, 0, profiled, 1, args.length);
+                args = profiled;
+            }
+            Integer code = Daemon.forward(args);
+            if (code != null) {
+                System.exit(code);
+            }
+            execute(null, args);
+        } catch (GitletException e) {
+            System.exit(0);
+        }
+    }
+
+    /** Run the command ARGS in the repository in the current directory.
+     * The object caches of WARM, if not null, are reused; see
+     * Gitlet.reuseCaches.
+     * @param warm repository of an earlier command, or null.
+     * @param args command and operands, after --profile to profile it.**/
+    static void execute(Gitlet warm, String... args) {
+        if (args.length > 0 && args[0].equals(Profile.OPTION)) {
+            profile(warm, Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length == 0) {
+            Utils.message("Please enter a command.");
+            throw new GitletException();
+        }
+        String cmd = args[0];
+        String[] cmdParams = Arrays.copyOfRange(args, 1, args.length);
+        if (Arrays.asList(VALID_COMMANDS).contains(cmd)) {
+            if (!repoExists()) {
+                if (cmd.equals("init")) {
+                    repo = new Gitlet();
+                    Profile.lap(Profile.COMMAND);
+                    repo.save();
+                    Profile.lap(Profile.SAVE);
                 } else {
-                    File overwrittenRepo = new File(".gitlet/repo");
-                    repo = lastRepoState();
-                    handleCommand(cmd, cmdParams);
-                    Utils.writeObject(overwrittenRepo, repo);
+                    Utils.message("Not in an "
+                            + "initialized Gitlet directory.");
+                    throw new GitletException();
                 }
             } else {
-                Utils.message("No command with that name exists.");
+                repo = lastRepoState();
+                if (warm != null) {
+                    repo.reuseCaches(warm);
+                }
+                Profile.lap(Profile.LOAD);
+                handleCommand(cmd, cmdParams);
+                Profile.lap(Profile.COMMAND);
+                repo.save();
+                Profile.lap(Profile.SAVE);
+            }
+        } else {
+            Utils.message("No command with that name exists.");
+            throw new GitletException();
+        }
+    }
+
+    /** Run the command ARGS as execute does, then print its profile as
+     * JSON to the standard error, whether or not it failed.
+     * @param warm repository of an earlier command, or null.
+     * @param args command and operands.**/
+    private static void profile(Gitlet warm, String... args) {
+        boolean failed = true;
+        Profile.start();
+        try {
+            execute(warm, args);
+            failed = false;
+        } finally {
+            System.err.println(Profile.report(args.length == 0 ? ""
+                    : args[0], failed));
+            Profile.stop();
+        }
+    }
+
+    /** Run the command ARGS in R, without writing out its state.
+     * @param r repository.
+     * @param args command and operands.**/
+    static void runIn(Gitlet r, String... args) {
+        if (args.length == 0) {
+            Utils.message("Please enter a command.");
+            throw new GitletException();
+        } else if (!Arrays.asList(VALID_COMMANDS).contains(args[0])) {
+            Utils.message("No command with that name exists.");
+            throw new GitletException();
+        }
+        repo = r;
+        handleCommand(args[0], Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    /** Handle "daemon OPS": serve this repository with no operands,
+     * or stop its daemon with operand "stop".
+     * @param ops operands.**/
+    private static void daemon(String[] ops) {
+        if (!repoExists()) {
+            Utils.message("Not in an initialized Gitlet directory.");
+            throw new GitletException();
+        } else if (ops.length == 0) {
+            Daemon.serve();
+        } else if (ops.length == 1 && ops[0].equals("stop")) {
+            if (Daemon.forward("daemon", "stop") == null) {
+                Utils.message("No daemon is running.");
                 throw new GitletException();
             }
-        } catch (GitletException e) {
-            System.exit(0);
+        } else {
+            Utils.message("Incorrect operands");
+            throw new GitletException();
         }
     }
 
@@ -67,8 +163,11 @@ public class Main {
                     + "in the current directory");
             throw new GitletException();
         case "add":
-            filename = ops[0];
-            repo.add(filename);
+            if (ops.length == 0) {
+                Utils.message("Incorrect operands");
+                throw new GitletException();
+            }
+            repo.add(ops);
             break;
         case "commit":
             msg = ops[0];
@@ -139,6 +238,9 @@ public class Main {
             branchname = ops[0];
             repo.merge(branchname);
             break;
+        case "gc":
+            repo.gc();
+            break;
         default:
             Utils.message("Invalid GITLET command,"
                     + "OR invalid command arguments.");
@@ -148,18 +250,51 @@ public class Main {
     /** Return true iff gitlet repo exists FOR THE CURRENT WORKING DIRECTORY.
      * I.e. return true if working directory has ".gitlet", repo initialized.
      * @return if we already made a repo*/
-    private static boolean repoExists() {
+    static boolean repoExists() {
         String currentDirectory = System.getProperty("user.dir");
         File checker = new File(currentDirectory + "/.gitlet");
         return checker.exists();
     }
 
     /** Returns the existing Gitlet repo
-     * (call before a new gitlet command).
+     * (call before a new gitlet command). Its refs and index are only
+     * read as the command needs them. A .gitlet/repo file left by an
+     * older version of gitlet is first split into refs and an index,
+     * and a repository of the first version is converted (see
+     * Baseline); one that neither can read is reported.
      * @return our repo.**/
     public static Gitlet lastRepoState() {
-        File repoPATH =  new File(".gitlet/repo");
-        return Utils.readObject(repoPATH, Gitlet.class);
+        File gitletDir = new File(".gitlet");
+        File oldState = new File(gitletDir, "repo");
+        if (oldState.isFile()) {
+            byte[] state = Utils.readContents(oldState);
+            Gitlet old = Baseline.upgrade(gitletDir, state);
+            if (old == null) {
+                try {
+                    old = Codec.decodeRepo(state);
+                } catch (IllegalArgumentException excp) {
+                    Utils.message("Unsupported repository format.");
+                    throw new GitletException();
+                }
+            }
+            old.save();
+            oldState.delete();
+            Baseline.removeLeftovers(gitletDir);
+            return old;
+        }
+        return new Gitlet(new Refs(gitletDir), new Index(gitletDir));
+    }
+
+    /** Return the repository of the last command run.
+     * @return repository, or null.**/
+    static Gitlet repo() {
+        return repo;
+    }
+
+    /** Forget the repository of the last command run, whose caches
+     * must not be reused. **/
+    static void forgetRepo() {
+        repo = null;
     }
 
     /** Ultimate repo object. */
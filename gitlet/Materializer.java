@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/** Writes blobs to working files, many at a time. <p></p>
+ * Each write streams a blob out of the object store into a temporary
+ * file next to its working file and renames it into place (see
+ * writeFile). write only queues the work for a pool of THREADS I/O
+ * threads, so reads from the store and writes to the working tree of
+ * different files overlap. The blobs being written at any time add up
+ * to at most a fixed budget of bytes (a blob bigger than the whole
+ * budget is written alone), and write blocks while the budget is used
+ * up. finish waits for every write and reports the failure of the
+ * first path in sorted order, whatever order the threads failed in.
+ * The new metadata of the written files is handed back to the caller,
+ * so the index is only ever touched by one thread.
+ * @author Kevin Moy**/
+
+class Materializer {
+
+    /** Number of I/O threads. Writes mostly wait on the device, so
+     * there are more threads than processors. **/
+    static final int THREADS =
+        Math.min(32, 4 * Runtime.getRuntime().availableProcessors());
+    /** Default number of blob bytes in flight at once. **/
+    static final int DEFAULT_BUDGET = 64 << 20;
+
+    /** A materializer writing blobs from STORE with the default
+     * budget.
+     * @param store object store.**/
+    Materializer(ObjectStore store) {
+        this(store, DEFAULT_BUDGET, THREADS);
+    }
+
+    /** A materializer writing blobs from STORE on THREADS threads, with
+     * at most BUDGET blob bytes in flight.
+     * @param store object store.
+     * @param budget bytes in flight.
+     * @param threads number of I/O threads.**/
+    Materializer(ObjectStore store, int budget, int threads) {
+        _store = store;
+        _budget = budget;
+        _inFlight = new Semaphore(budget);
+        _pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gitlet-materializer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Queue writing blob ID to working file NAME, waiting first until
+     * the blob fits in the byte budget.
+     * @param name file path.
+     * @param id blob ID.**/
+    void write(String name, String id) {
+        long size;
+        try {
+            size = _store.blobSize(id);
+        } catch (RuntimeException excp) {
+            synchronized (this) {
+                _failures.put(name, excp);
+            }
+            return;
+        }
+        int cost = (int) Math.max(1, Math.min(_budget, size));
+        _inFlight.acquireUninterruptibly(cost);
+        _pool.execute(() -> {
+            try {
+                Index.Stat stat = writeFile(_store, name, id);
+                synchronized (this) {
+                    _written.put(name, stat);
+                }
+            } catch (RuntimeException excp) {
+                synchronized (this) {
+                    _failures.put(name, excp);
+                }
+            } finally {
+                _inFlight.release(cost);
+            }
+        });
+    }
+
+    /** Wait for all queued writes. Throws the failure of the first
+     * failed path in sorted order, if any failed; the other writes are
+     * finished either way.
+     * @return sorted path -> new metadata map of the written files.**/
+    Map<String, Index.Stat> finish() {
+        _pool.shutdown();
+        boolean done = false;
+        while (!done) {
+            try {
+                done = _pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException excp) {
+                continue;
+            }
+        }
+        synchronized (this) {
+            if (!_failures.isEmpty()) {
+                throw _failures.firstEntry().getValue();
+            }
+            return _written;
+        }
+    }
+
+    /** Write the contents of blob ID from STORE to working file NAME,
+     * streaming them to a temporary file next to NAME that is then
+     * renamed over it, so NAME never holds partial contents. Missing
+     * directories are created.
+     * @param store object store.
+     * @param name file path.
+     * @param id blob ID.
+     * @return metadata of the written file.**/
+    static Index.Stat writeFile(ObjectStore store, String name, String id) {
+        File file = new File(name);
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IllegalArgumentException("cannot create " + dir);
+        }
+        try {
+            File temp = File.createTempFile(".gitlet-", ".tmp", dir);
+            try {
+                store.copyBlob(id, temp);
+                try {
+                    Files.move(temp.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException excp) {
+                    Files.move(temp.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Index.Stat.of(file);
+    }
+
+    /** Store the blobs are read from. **/
+    private final ObjectStore _store;
+    /** Most blob bytes in flight at once. **/
+    private final int _budget;
+    /** Permits for the blob bytes not in flight. **/
+    private final Semaphore _inFlight;
+    /** I/O threads. **/
+    private final ExecutorService _pool;
+    /** Files written so far, with their new metadata. **/
+    private final TreeMap<String, Index.Stat> _written = new TreeMap<>();
+    /** Failed writes by path. **/
+    private final TreeMap<String, RuntimeException> _failures =
+        new TreeMap<>();
+
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A least-recently-used cache of objects read from an ObjectStore,
+ * keyed by ID and bounded by the total of the sizes given for them
+ * (their sizes in bytes, near enough). Adding an object evicts the least
+ * recently used ones until the total is within the budget again; an
+ * object bigger than an eighth of the budget is never cached, so one
+ * large blob cannot flush everything else. <p></p>
+ * Objects are content-addressed, so an ID always names the same
+ * contents and entries never go stale. The cache counts its hits,
+ * misses and evictions. All methods are synchronized, as objects may
+ * be read from several threads.
+ * @author Kevin Moy**/
+
+class ObjectCache {
+
+    /** A cache holding objects of at most BUDGET bytes in all.
+     * @param budget size limit in bytes; 0 caches nothing.**/
+    ObjectCache(long budget) {
+        _budget = Math.max(0, budget);
+    }
+
+    /** Return the object with ID, or null if it is not cached.
+     * @param id object ID.
+     * @return cached object, or null.**/
+    synchronized Object get(String id) {
+        Entry entry = _entries.get(id);
+        if (entry == null) {
+            _misses += 1;
+            Profile.cacheMiss();
+            return null;
+        }
+        _hits += 1;
+        Profile.cacheHit();
+        return entry._value;
+    }
+
+    /** Cache VALUE, of SIZE bytes, as the object with ID, evicting the
+     * least recently used objects as needed.
+     * @param id object ID.
+     * @param value object.
+     * @param size size of VALUE in bytes.**/
+    synchronized void put(String id, Object value, long size) {
+        if (_budget == 0 || size > _budget / 8) {
+            return;
+        }
+        Entry old = _entries.put(id, new Entry(value, size));
+        if (old != null) {
+            _size -= old._size;
+        }
+        _size += size;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_size > _budget) {
+            _size -= eldest.next()._size;
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Return the number of lookups that found their object.
+     * @return hits.**/
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not.
+     * @return misses.**/
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of objects evicted to stay within the budget.
+     * @return evictions.**/
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return the total size of the cached objects.
+     * @return size in bytes.**/
+    synchronized long size() {
+        return _size;
+    }
+
+    /** Return the number of cached objects.
+     * @return object count.**/
+    synchronized int count() {
+        return _entries.size();
+    }
+
+    /** A cached object and its size. **/
+    private static final class Entry {
+
+        /** Object VALUE of SIZE bytes.
+         * @param value object.
+         * @param size size in bytes.**/
+        Entry(Object value, long size) {
+            _value = value;
+            _size = size;
+        }
+
+        /** The object. **/
+        private final Object _value;
+        /** Its size in bytes. **/
+        private final long _size;
+    }
+
+    /** Entries by ID, least recently used first. **/
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Most bytes cached at once. **/
+    private final long _budget;
+    /** Bytes cached. **/
+    private long _size;
+    /** Lookups that hit. **/
+    private long _hits;
+    /** Lookups that missed. **/
+    private long _misses;
+    /** Objects evicted. **/
+    private long _evictions;
+
+}
@@ -0,0 +1,762 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Content-addressed storage for everything under .gitlet: commits,
+ * trees and blob contents, each kept in its own file named by its
+ * SHA-1 ID. Commits only reference trees by ID, and trees only
+ * reference blobs by ID, so every object is read only when needed.
+ * <p></p>
+ * Object files are sharded by the first two hex digits of their ID
+ * (e.g. commitLog/3f/a9...), so no directory grows past a few thousand
+ * entries. Repositories written before sharding are migrated the first
+ * time they are opened, once their .gitlet/repo has been converted (see
+ * Main.lastRepoState); the first version's commits, which are not in a
+ * format this store reads, are rewritten by Baseline instead.
+ * <p></p>
+ * Every object file starts with a header: the bytes of MAGIC, a method
+ * byte (STORED or DEFLATED) and the uncompressed length as a long.
+ * Objects are deflated at the level given by the GITLET_COMPRESSION
+ * environment variable (0-9, default 6; 0 stores them as is). Files
+ * without the header are objects from older repositories and are read
+ * verbatim.
+ * <p></p>
+ * Blob contents are streamed between working files and object files
+ * through a fixed-size buffer, or with FileChannel.transferTo when
+ * stored as is, so they never have to fit in memory.
+ * <p></p>
+ * repack (the gc command) bundles every object reachable from the
+ * commits into a single PackFile under .gitlet/packs, storing each
+ * version of a file as a Delta against the next newer version when
+ * that saves space, with delta chains at most MAX_DELTA_DEPTH long.
+ * Reads look for a loose object file first, then in the packs.
+ * <p></p>
+ * Commits and blob contents that are read are kept in an ObjectCache
+ * of GITLET_CACHE_SIZE bytes (default DEFAULT_CACHE_SIZE; 0 turns it
+ * off), so reading the same one again within a command, or in a later
+ * command of a daemon or Repository that keeps this store, costs no
+ * I/O or decoding.
+ * @author Kevin Moy**/
+
+class ObjectStore {
+
+    /** Current on-disk format: 2 means sharded object directories. **/
+    static final int FORMAT = 2;
+    /** First bytes of every object file written with a header. **/
+    static final byte[] MAGIC = {0, 'G', 'L', 'O'};
+    /** Header method byte: contents follow uncompressed. **/
+    static final byte STORED = 0;
+    /** Header method byte: contents follow deflated. **/
+    static final byte DEFLATED = 1;
+    /** Length of the object header. **/
+    static final int HEADER_LENGTH = MAGIC.length + 1 + 8;
+    /** Compression level used when GITLET_COMPRESSION is not set. **/
+    static final int DEFAULT_LEVEL = 6;
+    /** Longest chain of deltas written by repack. **/
+    static final int MAX_DELTA_DEPTH = 10;
+    /** Object cache size used when GITLET_CACHE_SIZE is not set. **/
+    static final long DEFAULT_CACHE_SIZE = 32 << 20;
+
+    /** Create a store rooted at the .gitlet directory GITLETDIR.
+     * @param gitletDir the .gitlet directory.**/
+    ObjectStore(File gitletDir) {
+        this._commits = new File(gitletDir, "commitLog");
+        this._blobs = new File(gitletDir, "stagingArea");
+        this._trees = new File(gitletDir, "trees");
+        this._format = new File(gitletDir, "format");
+        this._packDir = new File(gitletDir, "packs");
+        this._level = compressionLevel(System.getenv("GITLET_COMPRESSION"));
+        this._cache = new ObjectCache(
+            cacheSize(System.getenv("GITLET_CACHE_SIZE")));
+        if (_commits.isDirectory() && !_format.isFile()) {
+            if (new File(gitletDir, "repo").isFile()) {
+                throw new IllegalArgumentException(
+                    "repository state not converted yet");
+            }
+            migrateToShards();
+        }
+    }
+
+    /** Creates the object subdirectories. **/
+    void createDirectories() {
+        _commits.mkdir();
+        _blobs.mkdir();
+        _trees.mkdir();
+        _packDir.mkdir();
+        Utils.writeContents(_format, Integer.toString(FORMAT));
+    }
+
+    /** Write the contents of BLOB, unless they are already stored.
+     * The contents are streamed from the blob's file.
+     * @param blob blob to store.
+     * @return ID of the stored blob.**/
+    String writeBlob(Blob blob) {
+        File f = objectFile(_blobs, blob.getID());
+        if (!hasObject(_blobs, blob.getID())) {
+            writeObjectFile(f, blob.getFile(), blob.getStat());
+        }
+        return blob.getID();
+    }
+
+    /** Write CONTENTS as the blob with ID, unless it is already stored.
+     * Used for blobs whose files are gone, as when converting a
+     * repository of the first version of gitlet (see Baseline).
+     * @param id blob ID.
+     * @param contents blob contents.**/
+    void writeBlob(String id, byte[] contents) {
+        if (!hasObject(_blobs, id)) {
+            writeObjectFile(objectFile(_blobs, id), contents);
+        }
+    }
+
+    /** Write the contents of the blob with ID to file DEST, streaming
+     * them unchanged from a loose object. Packed blobs are rebuilt in
+     * memory first.
+     * @param id blob ID.
+     * @param dest file to create or overwrite.**/
+    void copyBlob(String id, File dest) {
+        File f = objectFile(_blobs, id);
+        if (f.isFile()) {
+            copyObjectFile(f, dest);
+        } else {
+            Utils.writeContents(dest, readObject(_blobs, id));
+        }
+    }
+
+    /** Return the uncompressed length of the blob with ID, reading only
+     * its object header (or the start of its pack entry).
+     * @param id blob ID.
+     * @return length in bytes.**/
+    long blobSize(String id) {
+        File f = objectFile(_blobs, id);
+        if (f.isFile()) {
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                byte[] header = in.readNBytes(HEADER_LENGTH);
+                if (hasHeader(header)) {
+                    return ByteBuffer.wrap(header)
+                        .getLong(MAGIC.length + 1);
+                }
+                return f.length();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        for (PackFile pack : packs()) {
+            long size = pack.size(id);
+            if (size >= 0) {
+                return size;
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Return the contents of the blob with ID, which may be cached
+     * and so must not be modified.
+     * @param id blob ID.
+     * @return blob contents.**/
+    byte[] readBlob(String id) {
+        byte[] contents = (byte[]) _cache.get(id);
+        if (contents == null) {
+            contents = readObject(_blobs, id);
+            _cache.put(id, contents, contents.length);
+        }
+        return contents;
+    }
+
+    /** Write COMMIT along with its tree.
+     * @param commit commit to store.**/
+    void writeCommit(Commit commit) {
+        writeTree(commit.getTree());
+        File commitFile = objectFile(_commits, commit.getID());
+        writeObjectFile(commitFile, Codec.encode(commit));
+    }
+
+    /** Return true iff a commit with the full ID is stored.
+     * @param id full commit ID.
+     * @return whether commit exists.**/
+    boolean hasCommit(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        if (objectFile(_commits, id).isFile()) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            if (pack.type(id) == PackFile.COMMIT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the commit with full ID. Its tree is not read until
+     * the commit's files are asked for. Each call returns a new Commit,
+     * though the stored one is only decoded if not cached.
+     * @param id full commit ID.
+     * @return the commit, or null if there is none.**/
+    Commit readCommit(String id) {
+        Commit cached = (Commit) _cache.get(id);
+        if (cached == null) {
+            if (!hasCommit(id)) {
+                return null;
+            }
+            byte[] encoded = readObject(_commits, id);
+            cached = Codec.decodeCommit(encoded, id);
+            Profile.commitRead();
+            _cache.put(id, cached, encoded.length + COMMIT_OVERHEAD);
+        }
+        Commit commit = cached.unloaded();
+        commit.setStore(this);
+        return commit;
+    }
+
+    /** Return the cache of commits and blob contents read, whose
+     * hits(), misses() and evictions() tell how well it does.
+     * @return object cache.**/
+    ObjectCache cache() {
+        return _cache;
+    }
+
+    /** Write TREE and those of its subtrees that are in memory, unless
+     * they are already stored. Subtrees not in memory were read from
+     * this store, so they and everything below them are stored already.
+     * @param tree tree to store.**/
+    void writeTree(Tree tree) {
+        if (hasObject(_trees, tree.getID())) {
+            return;
+        }
+        for (Tree sub : tree.loadedSubtrees().values()) {
+            writeTree(sub);
+        }
+        writeObjectFile(objectFile(_trees, tree.getID()),
+                Codec.encode(tree));
+    }
+
+    /** Return the tree with ID. Its subtrees are not read until they
+     * are needed.
+     * @param id tree ID.
+     * @return the tree.**/
+    Tree readTree(String id) {
+        Tree tree = Codec.decodeTree(readObject(_trees, id), id);
+        Profile.treeRead();
+        tree.setStore(this);
+        return tree;
+    }
+
+    /** Return the IDs of all stored commits, in no particular order.
+     * Lists every shard, so only used to rebuild indexes.
+     * @return commit IDs.**/
+    List<String> commitIds() {
+        List<String> result = new ArrayList<>();
+        File[] shards = _commits.listFiles();
+        Profile.listed();
+        if (shards == null) {
+            return result;
+        }
+        for (File shard : shards) {
+            List<String> names = Utils.plainFilenamesIn(shard);
+            if (names != null) {
+                for (String name : names) {
+                    result.add(shard.getName() + name);
+                }
+            }
+        }
+        for (PackFile pack : packs()) {
+            result.addAll(pack.ids(PackFile.COMMIT));
+        }
+        return result;
+    }
+
+    /** Bundle every commit in COMMITIDS, and every tree and blob they
+     * reference, into one new pack, replacing all existing packs and the
+     * loose copies of those objects. Blobs that are only staged stay
+     * loose. Commits and trees written in an older format are
+     * re-encoded on the way in.
+     * @param commitIds IDs of all commits, parents before children.**/
+    void repack(List<String> commitIds) {
+        PackFile.Writer writer = new PackFile.Writer(_packDir);
+        List<File> packed = new ArrayList<>();
+        LinkedHashMap<String, LinkedHashSet<String>> histories =
+            new LinkedHashMap<>();
+        for (String id : commitIds) {
+            Commit commit = Codec.decodeCommit(readObject(_commits, id), id);
+            Profile.commitRead();
+            writer.add(id, PackFile.COMMIT, Codec.encode(commit));
+            packed.add(objectFile(_commits, id));
+            packTree(writer, commit.getTreeID(), "", histories, packed);
+        }
+        for (LinkedHashSet<String> versions : histories.values()) {
+            packHistory(writer, new ArrayList<>(versions), packed);
+        }
+        PackFile pack = writer.finish();
+        for (PackFile old : packs()) {
+            if (!old.file().equals(pack.file())) {
+                old.delete();
+            }
+        }
+        for (File loose : packed) {
+            loose.delete();
+            loose.getParentFile().delete();
+        }
+        _packs = null;
+    }
+
+    /** Add tree ID, with path PREFIX, and its subtrees to WRITER, and
+     * the blob IDs of its files to HISTORIES. Trees already in WRITER
+     * are skipped along with everything below them.
+     * @param writer pack being written.
+     * @param id tree ID.
+     * @param prefix path of the tree's directory.
+     * @param histories path -> blob IDs map to extend.
+     * @param packed loose files of packed objects, to extend.**/
+    private void packTree(PackFile.Writer writer, String id, String prefix,
+                          HashMap<String, LinkedHashSet<String>> histories,
+                          List<File> packed) {
+        if (writer.contains(id)) {
+            return;
+        }
+        Tree tree = Codec.decodeTree(readObject(_trees, id), id);
+        Profile.treeRead();
+        writer.add(id, PackFile.TREE, Codec.encode(tree));
+        packed.add(objectFile(_trees, id));
+        Map<String, String> files = tree.files();
+        for (String name : files.keySet()) {
+            histories.computeIfAbsent(prefix + name,
+                k -> new LinkedHashSet<>()).add(files.get(name));
+        }
+        for (Map.Entry<String, String> dir : tree.dirs().entrySet()) {
+            packTree(writer, dir.getValue(), prefix + dir.getKey() + "/",
+                    histories, packed);
+        }
+    }
+
+    /** Add the VERSIONS of one file (oldest first) to WRITER, newest
+     * first. Each older version is stored as a delta against the next
+     * newer one if that is less than half its size and the chain is
+     * not already MAX_DELTA_DEPTH long.
+     * @param writer pack being written.
+     * @param versions blob IDs of the file's versions.
+     * @param packed loose files of packed objects, to extend.**/
+    private void packHistory(PackFile.Writer writer, List<String> versions,
+                             List<File> packed) {
+        HashMap<String, Integer> depth = new HashMap<>();
+        byte[] newer = null;
+        String newerId = null;
+        for (int i = versions.size() - 1; i >= 0; i -= 1) {
+            String id = versions.get(i);
+            if (writer.contains(id)) {
+                newer = null;
+                newerId = null;
+                continue;
+            }
+            byte[] contents = readObject(_blobs, id);
+            byte[] delta = null;
+            if (newerId != null && depth.get(newerId) < MAX_DELTA_DEPTH) {
+                delta = Delta.create(newer, contents);
+                if (delta.length >= contents.length / 2) {
+                    delta = null;
+                }
+            }
+            if (delta == null) {
+                writer.add(id, PackFile.BLOB, contents);
+                depth.put(id, 0);
+            } else {
+                writer.addDelta(id, PackFile.BLOB, newerId, delta);
+                depth.put(id, depth.get(newerId) + 1);
+            }
+            packed.add(objectFile(_blobs, id));
+            newer = contents;
+            newerId = id;
+        }
+    }
+
+    /** Return true iff object ID is stored in DIR or in a pack.
+     * @param dir object directory.
+     * @param id full object ID.
+     * @return whether ID is stored.**/
+    private boolean hasObject(File dir, String id) {
+        if (objectFile(dir, id).isFile()) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the contents of object ID, from its loose file in DIR
+     * if there is one, else from the pack holding it.
+     * @param dir object directory.
+     * @param id full object ID.
+     * @return object contents.**/
+    private byte[] readObject(File dir, String id) {
+        File f = objectFile(dir, id);
+        if (f.isFile()) {
+            return readObjectFile(f);
+        }
+        for (PackFile pack : packs()) {
+            byte[] contents = pack.read(id);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        throw new IllegalArgumentException("no such object " + id);
+    }
+
+    /** Return all packs, opening them on first use. Synchronized, as
+     * blobs may be stored from several threads (see BulkAdd).
+     * @return packs.**/
+    private synchronized List<PackFile> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File[] files = _packDir.listFiles();
+            Profile.listed();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) {
+                    if (f.getName().endsWith(".pack")) {
+                        _packs.add(new PackFile(f));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Return the file holding object ID in the sharded directory DIR.
+     * @param dir object directory.
+     * @param id full object ID.
+     * @return object file.**/
+    private static File objectFile(File dir, String id) {
+        return new File(new File(dir, id.substring(0, 2)), id.substring(2));
+    }
+
+    /** Write CONTENTS to object file F behind an object header,
+     * deflating them unless the compression level is 0.
+     * @param f object file.
+     * @param contents uncompressed object contents.**/
+    private void writeObjectFile(File f, byte[] contents) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC);
+        header.put(_level == 0 ? STORED : DEFLATED);
+        header.putLong(contents.length);
+        if (_level == 0) {
+            Utils.writeContents(makeShard(f), header.array(), contents);
+            return;
+        }
+        Deflater deflater = new Deflater(_level);
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream out =
+            new ByteArrayOutputStream(contents.length / 2 + HEADER_LENGTH);
+        out.write(header.array(), 0, HEADER_LENGTH);
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        Utils.writeContents(makeShard(f), out.toByteArray());
+    }
+
+    /** Write the contents of file SOURCE, whose metadata were STAT when
+     * it was hashed, to object file F behind an object header. The object
+     * is written to a temporary file in F's shard, streaming the contents
+     * through a fixed-size buffer (or straight from channel to channel if
+     * they are stored as is), and renamed to F once all of them are
+     * there, so F never holds part of an object. Nothing is stored if
+     * SOURCE no longer has metadata STAT, as its contents may then not be
+     * those that were hashed.
+     * @param f object file.
+     * @param source file with the uncompressed contents.
+     * @param stat metadata of SOURCE when it was hashed.**/
+    private void writeObjectFile(File f, File source, Index.Stat stat) {
+        try {
+            File temp = File.createTempFile(f.getName(), ".tmp",
+                    makeShard(f).getParentFile());
+            try {
+                writeObjectFile(temp.toPath(), source);
+                if (stat == null || !stat.equals(Index.Stat.of(source))) {
+                    throw new IOException(source + " changed while it was"
+                                          + " added");
+                }
+                try {
+                    Files.move(temp.toPath(), f.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException excp) {
+                    Files.move(temp.toPath(), f.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                temp.delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of file SOURCE to the new file TEMP behind an
+     * object header giving the length SOURCE has when it is opened.
+     * @param temp file to write.
+     * @param source file with the uncompressed contents.**/
+    private void writeObjectFile(Path temp, File source) throws IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                 StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(temp,
+                 StandardOpenOption.WRITE)) {
+            long length = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.put(MAGIC);
+            header.put(_level == 0 ? STORED : DEFLATED);
+            header.putLong(length);
+            header.flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            if (_level == 0) {
+                transfer(in, 0, length, out);
+                return;
+            }
+            Deflater deflater = new Deflater(_level);
+            OutputStream z = new DeflaterOutputStream(
+                    Channels.newOutputStream(out), deflater, BUFFER_SIZE);
+            copy(Channels.newInputStream(in), z, length);
+            z.close();
+            deflater.end();
+        }
+    }
+
+    /** Write the uncompressed contents of object file F to DEST,
+     * streaming them through a fixed-size buffer (or straight from
+     * channel to channel if they are stored as is).
+     * @param f object file.
+     * @param dest file to create or overwrite.**/
+    private static void copyObjectFile(File f, File dest) {
+        try (FileChannel in = FileChannel.open(f.toPath(),
+                 StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest.toPath(),
+                 StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                continue;
+            }
+            long start = HEADER_LENGTH;
+            long length;
+            byte method = STORED;
+            if (hasHeader(header.array())) {
+                method = header.get(MAGIC.length);
+                length = header.getLong(MAGIC.length + 1);
+            } else {
+                start = 0;
+                length = in.size();
+            }
+            Profile.written(length);
+            if (method == STORED) {
+                transfer(in, start, length, out);
+                return;
+            }
+            in.position(start);
+            Inflater inflater = new Inflater();
+            InputStream z = new InflaterInputStream(
+                    Channels.newInputStream(in), inflater, BUFFER_SIZE);
+            copy(z, Channels.newOutputStream(out), length);
+            inflater.end();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copy LENGTH bytes of IN, from position START on, to OUT straight
+     * from channel to channel.
+     * @param in source.
+     * @param start position of the first byte to copy.
+     * @param length number of bytes to copy.
+     * @param out destination.**/
+    private static void transfer(FileChannel in, long start, long length,
+                                 FileChannel out) throws IOException {
+        for (long done = 0; done < length; ) {
+            long n = in.transferTo(start + done, length - done, out);
+            if (n <= 0) {
+                throw new IOException("object shorter than its header says");
+            }
+            done += n;
+        }
+    }
+
+    /** Copy LENGTH bytes from IN to OUT through a fixed-size buffer.
+     * @param in source.
+     * @param out destination.
+     * @param length number of bytes to copy.**/
+    private static void copy(InputStream in, OutputStream out, long length)
+        throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long done = 0;
+        while (done < length) {
+            int n = in.read(buf, 0, (int) Math.min(buf.length,
+                    length - done));
+            if (n < 0) {
+                throw new IOException("object shorter than its header says");
+            }
+            out.write(buf, 0, n);
+            done += n;
+        }
+    }
+
+    /** Return the uncompressed contents of object file F.
+     * Files without an object header are returned as they are.
+     * @param f object file.
+     * @return object contents.**/
+    private static byte[] readObjectFile(File f) {
+        byte[] raw = Utils.readContents(f);
+        if (!hasHeader(raw)) {
+            return raw;
+        }
+        ByteBuffer header = ByteBuffer.wrap(raw, 0, HEADER_LENGTH);
+        header.position(MAGIC.length);
+        byte method = header.get();
+        int length = (int) header.getLong();
+        if (method == STORED) {
+            return Arrays.copyOfRange(raw, HEADER_LENGTH,
+                    HEADER_LENGTH + length);
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(raw, HEADER_LENGTH, raw.length - HEADER_LENGTH);
+        byte[] result = new byte[length];
+        try {
+            int done = 0;
+            while (done < length && !inflater.finished()) {
+                done += inflater.inflate(result, done, length - done);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("corrupt object " + f);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    /** Return true iff RAW starts with an object header.
+     * @param raw object file contents.
+     * @return whether RAW has a header.**/
+    private static boolean hasHeader(byte[] raw) {
+        if (raw.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i += 1) {
+            if (raw[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return raw[MAGIC.length] == STORED || raw[MAGIC.length] == DEFLATED;
+    }
+
+    /** Return the compression level named by SETTING, or DEFAULT_LEVEL
+     * if SETTING is missing or not a level from 0 to 9.
+     * @param setting value of GITLET_COMPRESSION, possibly null.
+     * @return compression level.**/
+    static int compressionLevel(String setting) {
+        if (setting == null || !setting.trim().matches("[0-9]")) {
+            return DEFAULT_LEVEL;
+        }
+        return Integer.parseInt(setting.trim());
+    }
+
+    /** Return the object cache size named by SETTING, or
+     * DEFAULT_CACHE_SIZE if SETTING is missing or not a number of bytes.
+     * @param setting value of GITLET_CACHE_SIZE, possibly null.
+     * @return cache size in bytes.**/
+    static long cacheSize(String setting) {
+        if (setting == null || !setting.trim().matches("[0-9]{1,18}")) {
+            return DEFAULT_CACHE_SIZE;
+        }
+        return Long.parseLong(setting.trim());
+    }
+
+    /** Create the shard directory of object file F if needed.
+     * @param f object file.
+     * @return F.**/
+    private static File makeShard(File f) {
+        File shard = f.getParentFile();
+        if (!shard.isDirectory()) {
+            shard.mkdir();
+        }
+        return f;
+    }
+
+    /** Move every object of a flat (unsharded) repository into its
+     * shard, then record the current format. The objects are those of
+     * the versions between the first one and sharding, which already
+     * wrote trees; a first-version repository never gets here, as
+     * Baseline writes its objects sharded and records the format. **/
+    private void migrateToShards() {
+        for (File dir : new File[] {_commits, _blobs, _trees}) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (name.length() != Utils.UID_LENGTH) {
+                    continue;
+                }
+                File dest = makeShard(objectFile(dir, name));
+                try {
+                    Files.move(new File(dir, name).toPath(), dest.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        Utils.writeContents(_format, Integer.toString(FORMAT));
+    }
+
+    /** Directory of serialized commits. **/
+    private File _commits;
+    /** Directory of blob contents. **/
+    private File _blobs;
+    /** Directory of serialized trees. **/
+    private File _trees;
+    /** File recording the on-disk format version. **/
+    private File _format;
+    /** Directory of pack files. **/
+    private File _packDir;
+    /** Open packs, or null until first needed. **/
+    private List<PackFile> _packs;
+    /** Deflate level for new objects (0 = store uncompressed). **/
+    private int _level;
+    /** Commits and blob contents read. **/
+    private final ObjectCache _cache;
+    /** Size of the deflate output buffer. **/
+    private static final int BUFFER_SIZE = 8192;
+    /** Bytes charged to a cached commit on top of its encoded size, for
+     * the objects and strings it is decoded into. **/
+    private static final int COMMIT_OVERHEAD = 256;
+
+}
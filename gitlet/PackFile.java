@@ -0,0 +1,468 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A pack: many objects bundled into one file plus an index, written
+ * by gc. <p></p>
+ * pack-X.pack starts with PACK_MAGIC and holds one entry per object:
+ * type byte, kind byte (FULL or DELTA), the binary ID of the delta base
+ * (DELTA only), the uncompressed and compressed payload lengths as
+ * ints, then the deflated payload. A FULL payload is the object itself;
+ * a DELTA payload is a Delta against the base, which is always in the
+ * same pack. <p></p>
+ * pack-X.idx starts with IDX_MAGIC and the object count, then a
+ * 256-entry fan-out table as in IdIndex, the sorted binary IDs, and the
+ * pack offset (long) of each ID's entry. <p></p>
+ * Both files are memory-mapped when opened. Lookups binary-search the
+ * mapped index in place, and entries are inflated straight out of the
+ * mapped pack, so a warm pack is read without copying it onto the
+ * heap. Packs too big for one mapping are read with positional channel
+ * reads instead.
+ * @author Kevin Moy**/
+
+class PackFile {
+
+    /** Entry type of a commit. **/
+    static final byte COMMIT = 1;
+    /** Entry type of a tree. **/
+    static final byte TREE = 2;
+    /** Entry type of a blob. **/
+    static final byte BLOB = 3;
+    /** Entry kind: payload is the whole object. **/
+    static final byte FULL = 0;
+    /** Entry kind: payload is a delta against another entry. **/
+    static final byte DELTA = 1;
+    /** First bytes of a pack file. **/
+    static final byte[] PACK_MAGIC = {'G', 'P', 'A', 'K'};
+    /** First bytes of a pack index file. **/
+    static final byte[] IDX_MAGIC = {'G', 'I', 'D', 'X'};
+
+    /** Open the pack PACK and its index.
+     * @param pack .pack file.**/
+    PackFile(File pack) {
+        _pack = pack;
+        String name = pack.getName();
+        _idx = new File(pack.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+        _index = map(_idx);
+        for (int i = 0; i < IDX_MAGIC.length; i += 1) {
+            if (_index.get(i) != IDX_MAGIC[i]) {
+                throw new IllegalArgumentException("bad pack index " + _idx);
+            }
+        }
+        _count = _index.getInt(IDX_MAGIC.length);
+        _idsStart = IDX_MAGIC.length + 4 + 4 * IdIndex.FANOUT;
+        _offsetsStart = _idsStart + _count * ID_BYTES;
+        if (pack.length() <= Integer.MAX_VALUE) {
+            _data = map(pack);
+        }
+    }
+
+    /** Return a read-only mapping of all of FILE.
+     * @param file file to map.
+     * @return mapped contents.**/
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true iff this pack holds object ID.
+     * @param id full object ID.
+     * @return whether ID is in this pack.**/
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Return the type of object ID, or 0 if it is not in this pack.
+     * @param id full object ID.
+     * @return COMMIT, TREE, BLOB or 0.**/
+    byte type(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return 0;
+        }
+        return entryType(offset(k));
+    }
+
+    /** Return the contents of object ID, applying deltas as needed.
+     * @param id full object ID.
+     * @return object contents, or null if it is not in this pack.**/
+    byte[] read(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        Entry entry = readEntry(offset(k));
+        if (entry.kind == FULL) {
+            return entry.payload;
+        }
+        return Delta.apply(read(entry.base), entry.payload);
+    }
+
+    /** Return the length of object ID without rebuilding it: the
+     * payload length of a FULL entry, or the target length at the start
+     * of a DELTA entry's (small) payload.
+     * @param id full object ID.
+     * @return object length, or -1 if it is not in this pack.**/
+    long size(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return -1;
+        }
+        long offset = offset(k);
+        ByteBuffer header = slice(offset, 2 + ID_BYTES + 8);
+        header.get();
+        if (header.get() == FULL) {
+            return header.getInt();
+        }
+        Entry entry = readEntry(offset);
+        ByteBuffer delta = ByteBuffer.wrap(entry.payload);
+        Delta.readVarint(delta);
+        return Delta.readVarint(delta);
+    }
+
+    /** Return the IDs of all objects of TYPE in this pack.
+     * @param type COMMIT, TREE or BLOB.
+     * @return object IDs.**/
+    List<String> ids(byte type) {
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < _count; k += 1) {
+            if (entryType(offset(k)) == type) {
+                byte[] id = new byte[ID_BYTES];
+                _index.get(_idsStart + k * ID_BYTES, id);
+                result.add(CommitGraph.toHex(id, 0));
+            }
+        }
+        return result;
+    }
+
+    /** Return the .pack file.
+     * @return pack file.**/
+    File file() {
+        return _pack;
+    }
+
+    /** Delete this pack and its index. **/
+    void delete() {
+        _pack.delete();
+        _idx.delete();
+    }
+
+    /** Return the index of ID among the sorted IDs, or -1.
+     * @param id full object ID.
+     * @return ID's index.**/
+    private int find(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = CommitGraph.toBinary(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1), hi = fanout(first);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareId(mid, key);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return entry I of the fan-out table.
+     * @param i first byte value.
+     * @return number of IDs whose first byte is at most I.**/
+    private int fanout(int i) {
+        return _index.getInt(IDX_MAGIC.length + 4 + 4 * i);
+    }
+
+    /** Compare the K-th sorted ID with KEY, as unsigned bytes.
+     * @param k ID index.
+     * @param key binary ID.
+     * @return negative, zero or positive as for compareTo.**/
+    private int compareId(int k, byte[] key) {
+        int start = _idsStart + k * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int c = Integer.compare(_index.get(start + i) & 0xff,
+                    key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the pack offset of the K-th sorted ID's entry.
+     * @param k ID index.
+     * @return entry offset.**/
+    private long offset(int k) {
+        return _index.getLong(_offsetsStart + 8 * k);
+    }
+
+    /** Return the type byte of the pack entry at OFFSET.
+     * @param offset position of the entry in the pack.
+     * @return entry type.**/
+    private byte entryType(long offset) {
+        return slice(offset, 1).get(0);
+    }
+
+    /** Return the pack entry at OFFSET, with its payload inflated.
+     * @param offset position of the entry in the pack.
+     * @return the entry.**/
+    private Entry readEntry(long offset) {
+        ByteBuffer header = slice(offset, 2 + ID_BYTES + 8);
+        Entry entry = new Entry();
+        entry.type = header.get();
+        entry.kind = header.get();
+        if (entry.kind == DELTA) {
+            byte[] base = new byte[ID_BYTES];
+            header.get(base);
+            entry.base = CommitGraph.toHex(base, 0);
+        }
+        int length = header.getInt();
+        int compressed = header.getInt();
+        entry.payload = inflate(slice(offset + header.position(), compressed),
+                length);
+        return entry;
+    }
+
+    /** Return up to LENGTH bytes of the pack starting at OFFSET.
+     * The result shares the mapping when the pack is mapped.
+     * @param offset first byte.
+     * @param length number of bytes wanted.
+     * @return buffer positioned at OFFSET's byte.**/
+    private ByteBuffer slice(long offset, int length) {
+        if (_data != null) {
+            int end = (int) Math.min(_data.capacity(), offset + length);
+            return _data.duplicate().position((int) offset).limit(end)
+                .slice();
+        }
+        try (FileChannel channel = FileChannel.open(_pack.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            int n = 0;
+            while (buf.hasRemaining() && n >= 0) {
+                n = channel.read(buf, offset + buf.position());
+            }
+            return buf.flip();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return COMPRESSED inflated into LENGTH bytes.
+     * @param compressed deflated data.
+     * @param length inflated length.
+     * @return inflated data.**/
+    static byte[] inflate(ByteBuffer compressed, int length) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] result = new byte[length];
+        try {
+            int done = 0;
+            while (done < length && !inflater.finished()) {
+                done += inflater.inflate(result, done, length - done);
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException("corrupt pack entry");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** One decoded pack entry. **/
+    private static class Entry {
+        /** Object type. **/
+        private byte type;
+        /** FULL or DELTA. **/
+        private byte kind;
+        /** Delta base ID (DELTA only). **/
+        private String base;
+        /** Inflated payload. **/
+        private byte[] payload;
+    }
+
+    /** Writes a new pack and its index. Entries are streamed to a
+     * temporary file; finish() writes the index and gives both files
+     * their final names. **/
+    static class Writer {
+
+        /** Start a pack in directory DIR.
+         * @param dir pack directory.**/
+        Writer(File dir) {
+            _dir = dir;
+            _dir.mkdir();
+            _tmp = new File(dir, "tmp-pack");
+            _offsets = new TreeMap<>();
+            try {
+                _out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(_tmp)));
+                _out.write(PACK_MAGIC);
+                _position = PACK_MAGIC.length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Return true iff object ID was already added.
+         * @param id full object ID.
+         * @return whether ID is in this pack.**/
+        boolean contains(String id) {
+            return _offsets.containsKey(id);
+        }
+
+        /** Add object ID of TYPE with CONTENTS.
+         * @param id full object ID.
+         * @param type COMMIT, TREE or BLOB.
+         * @param contents object contents.**/
+        void add(String id, byte type, byte[] contents) {
+            write(id, type, FULL, null, contents);
+        }
+
+        /** Add object ID of TYPE as DELTA against object BASE.
+         * @param id full object ID.
+         * @param type object type.
+         * @param base ID of an object already in this pack.
+         * @param delta delta from BASE's contents to ID's.**/
+        void addDelta(String id, byte type, String base, byte[] delta) {
+            write(id, type, DELTA, base, delta);
+        }
+
+        /** Write one entry.
+         * @param id full object ID.
+         * @param type object type.
+         * @param kind FULL or DELTA.
+         * @param base delta base ID, or null.
+         * @param payload object or delta.**/
+        private void write(String id, byte type, byte kind, String base,
+                           byte[] payload) {
+            try {
+                _offsets.put(id, _position);
+                _out.writeByte(type);
+                _out.writeByte(kind);
+                if (kind == DELTA) {
+                    _out.write(CommitGraph.toBinary(base));
+                }
+                byte[] compressed = deflate(payload);
+                _out.writeInt(payload.length);
+                _out.writeInt(compressed.length);
+                _out.write(compressed);
+                _position += 2 + (kind == DELTA ? ID_BYTES : 0) + 8
+                    + compressed.length;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Write the index and move both files into place.
+         * @return the new pack.**/
+        PackFile finish() {
+            try {
+                _out.close();
+                StringBuilder names = new StringBuilder();
+                int[] fanout = new int[IdIndex.FANOUT];
+                for (String id : _offsets.keySet()) {
+                    names.append(id);
+                    fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+                }
+                for (int i = 1; i < fanout.length; i += 1) {
+                    fanout[i] += fanout[i - 1];
+                }
+                ByteBuffer idx = ByteBuffer.allocate(IDX_MAGIC.length + 4
+                        + 4 * fanout.length
+                        + _offsets.size() * (ID_BYTES + 8));
+                idx.put(IDX_MAGIC).putInt(_offsets.size());
+                for (int n : fanout) {
+                    idx.putInt(n);
+                }
+                for (String id : _offsets.keySet()) {
+                    idx.put(CommitGraph.toBinary(id));
+                }
+                for (long offset : _offsets.values()) {
+                    idx.putLong(offset);
+                }
+                String name = "pack-" + Utils.sha1(names.toString());
+                Utils.writeContents(new File(_dir, name + ".idx"),
+                        idx.array());
+                File pack = new File(_dir, name + ".pack");
+                if (!_tmp.renameTo(pack)) {
+                    throw new IOException("cannot rename " + _tmp);
+                }
+                return new PackFile(pack);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Return DATA deflated.
+         * @param data bytes to compress.
+         * @return deflated bytes.**/
+        private byte[] deflate(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(data.length / 2 + 16);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            deflater.end();
+            return out.toByteArray();
+        }
+
+        /** Directory the pack is written to. **/
+        private File _dir;
+        /** Temporary pack file. **/
+        private File _tmp;
+        /** Output stream to _tmp. **/
+        private DataOutputStream _out;
+        /** Number of bytes written to _out. **/
+        private long _position;
+        /** Maps each added ID to its offset, in sorted order. **/
+        private Map<String, Long> _offsets;
+    }
+
+    /** Bytes in a binary SHA-1 ID. **/
+    private static final int ID_BYTES = CommitGraph.ID_BYTES;
+
+    /** The .pack file. **/
+    private File _pack;
+    /** The .idx file. **/
+    private File _idx;
+    /** Mapped .idx file. **/
+    private ByteBuffer _index;
+    /** Mapped .pack file, or null if it is too big to map. **/
+    private ByteBuffer _data;
+    /** Number of objects. **/
+    private int _count;
+    /** Position of the sorted IDs in _index. **/
+    private int _idsStart;
+    /** Position of the entry offsets in _index. **/
+    private int _offsetsStart;
+
+}
@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Per-command profile: the wall time of each phase of a command and
+ * counts of the work it did. Enabled by "gitlet --profile COMMAND ..."
+ * or, for every command, by a GITLET_PROFILE environment variable that
+ * is set to anything but "" or "0". <p></p>
+ * The phases are load (opening the repository; refs, index and objects
+ * are read lazily, so mostly show up under command), command and save.
+ * The counters are commits and trees decoded from the object store,
+ * bytes read and written whole through Utils.readContents and
+ * writeContents or copied from a blob into a working file, SHA-1 hashes
+ * computed and the bytes they hashed, directory listings, and hits and
+ * misses of the object cache (see ObjectCache). Counters are safe to
+ * update from any thread and cost one volatile read while profiling is
+ * off. <p></p>
+ * The report is one line of JSON on the standard error, with the same
+ * keys in the same order every time; see report.
+ * @author Kevin Moy**/
+
+final class Profile {
+
+    /** Option that profiles the command after it. **/
+    static final String OPTION = "--profile";
+    /** Environment variable that profiles every command. **/
+    static final String VARIABLE = "GITLET_PROFILE";
+
+    /** Phase indices. **/
+    static final int LOAD = 0, COMMAND = 1, SAVE = 2;
+
+    /** Not instantiable. **/
+    private Profile() {
+    }
+
+    /** Return true iff the environment asks for every command to be
+     * profiled.
+     * @return whether GITLET_PROFILE is set.**/
+    static boolean requested() {
+        String value = System.getenv(VARIABLE);
+        return value != null && !value.isEmpty() && !value.equals("0");
+    }
+
+    /** Start profiling from zero: clear the counters and phase times and
+     * start the clock of the first phase. **/
+    static void start() {
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+        for (int i = 0; i < _phases.length; i += 1) {
+            _phases[i] = 0;
+        }
+        _phase = LOAD;
+        _start = _lap = System.nanoTime();
+        _on = true;
+    }
+
+    /** Stop profiling. **/
+    static void stop() {
+        _on = false;
+    }
+
+    /** Return true iff a command is being profiled.
+     * @return whether profiling is on.**/
+    static boolean enabled() {
+        return _on;
+    }
+
+    /** Charge the time since the last lap (or start) to PHASE, which
+     * has ended, so the next phase has begun.
+     * @param phase LOAD, COMMAND or SAVE.**/
+    static void lap(int phase) {
+        if (_on) {
+            long now = System.nanoTime();
+            _phases[phase] += now - _lap;
+            _lap = now;
+            _phase = phase + 1;
+        }
+    }
+
+    /** Count a commit decoded from the object store. **/
+    static void commitRead() {
+        count(COMMITS_READ, 1);
+    }
+
+    /** Count a tree decoded from the object store. **/
+    static void treeRead() {
+        count(TREES_READ, 1);
+    }
+
+    /** Count N bytes read from a file.
+     * @param n number of bytes.**/
+    static void read(long n) {
+        count(BYTES_READ, n);
+    }
+
+    /** Count N bytes written to a file.
+     * @param n number of bytes.**/
+    static void written(long n) {
+        count(BYTES_WRITTEN, n);
+    }
+
+    /** Count a lookup that found its object in an ObjectCache. **/
+    static void cacheHit() {
+        count(CACHE_HITS, 1);
+    }
+
+    /** Count a lookup that did not. **/
+    static void cacheMiss() {
+        count(CACHE_MISSES, 1);
+    }
+
+    /** Count a directory listing. **/
+    static void listed() {
+        count(DIR_LISTINGS, 1);
+    }
+
+    /** Return MD, or while profiling, a digest that hashes through MD
+     * and counts the hashes it computes and the bytes it hashes.
+     * @param md SHA-1 digest.
+     * @return digest to use in its place.**/
+    static MessageDigest counted(MessageDigest md) {
+        return _on ? new CountedDigest(md) : md;
+    }
+
+    /** Return the profile of COMMAND as one line of JSON: the command
+     * name, whether it FAILED, the wall time of each phase and in total
+     * in milliseconds, and the counters. The time since the last lap
+     * goes to the phase that was running, as when the command failed.
+     * Keys are always present and in this order.
+     * @param command command name, or "" if none.
+     * @param failed whether the command reported an error.
+     * @return JSON object.**/
+    static String report(String command, boolean failed) {
+        if (_phase < PHASE_NAMES.length) {
+            lap(_phase);
+        }
+        long total = System.nanoTime() - _start;
+        StringBuilder out = new StringBuilder("{\"command\":");
+        quote(out, command);
+        out.append(",\"failed\":").append(failed);
+        out.append(",\"phases_ms\":{");
+        for (int i = 0; i < PHASE_NAMES.length; i += 1) {
+            out.append(String.format(Locale.ROOT, "\"%s\":%.3f,",
+                    PHASE_NAMES[i], _phases[i] / 1e6));
+        }
+        out.append(String.format(Locale.ROOT, "\"total\":%.3f},",
+                total / 1e6));
+        out.append("\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i += 1) {
+            out.append(i == 0 ? "" : ",").append('"')
+                .append(COUNTER_NAMES[i]).append("\":")
+                .append(COUNTERS[i].sum());
+        }
+        return out.append("}}").toString();
+    }
+
+    /** Return the current value of the counter called NAME.
+     * @param name counter name, as in the report.
+     * @return its value.**/
+    static long counter(String name) {
+        for (int i = 0; i < COUNTER_NAMES.length; i += 1) {
+            if (COUNTER_NAMES[i].equals(name)) {
+                return COUNTERS[i].sum();
+            }
+        }
+        throw new IllegalArgumentException("no counter " + name);
+    }
+
+    /** Add N to COUNTER if profiling.
+     * @param counter counter.
+     * @param n amount.**/
+    private static void count(LongAdder counter, long n) {
+        if (_on) {
+            counter.add(n);
+        }
+    }
+
+    /** Append S to OUT as a JSON string.
+     * @param out JSON being built.
+     * @param s string.**/
+    private static void quote(StringBuilder out, String s) {
+        out.append('"');
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < ' ') {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    /** A SHA-1 digest that counts, through another one. **/
+    private static final class CountedDigest extends MessageDigest {
+
+        /** A digest hashing through MD.
+         * @param md SHA-1 digest.**/
+        CountedDigest(MessageDigest md) {
+            super(md.getAlgorithm());
+            _md = md;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            _md.update(input);
+            count(SHA1_BYTES, 1);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int len) {
+            _md.update(input, offset, len);
+            count(SHA1_BYTES, len);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            count(SHA1_CALLS, 1);
+            return _md.digest();
+        }
+
+        @Override
+        protected void engineReset() {
+            _md.reset();
+        }
+
+        /** Digest that does the hashing. **/
+        private final MessageDigest _md;
+    }
+
+    /** Commits decoded. **/
+    private static final LongAdder COMMITS_READ = new LongAdder();
+    /** Trees decoded. **/
+    private static final LongAdder TREES_READ = new LongAdder();
+    /** Bytes read. **/
+    private static final LongAdder BYTES_READ = new LongAdder();
+    /** Bytes written. **/
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    /** SHA-1 hashes computed. **/
+    private static final LongAdder SHA1_CALLS = new LongAdder();
+    /** Bytes hashed. **/
+    private static final LongAdder SHA1_BYTES = new LongAdder();
+    /** Directories listed. **/
+    private static final LongAdder DIR_LISTINGS = new LongAdder();
+
+    /** Object cache lookups that hit. **/
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    /** Object cache lookups that missed. **/
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /** Every counter, in report order. **/
+    private static final LongAdder[] COUNTERS = {COMMITS_READ, TREES_READ,
+        BYTES_READ, BYTES_WRITTEN, SHA1_CALLS, SHA1_BYTES, DIR_LISTINGS,
+        CACHE_HITS, CACHE_MISSES};
+    /** Names of COUNTERS in the report. **/
+    private static final String[] COUNTER_NAMES = {"commits_read",
+        "trees_read", "bytes_read", "bytes_written", "sha1_calls",
+        "sha1_bytes", "dir_listings", "cache_hits", "cache_misses"};
+    /** Names of the phases in the report, by index. **/
+    private static final String[] PHASE_NAMES = {"load", "command", "save"};
+
+    /** True while a command is profiled. **/
+    private static volatile boolean _on;
+    /** Nanoseconds spent in each phase. **/
+    private static long[] _phases = new long[PHASE_NAMES.length];
+    /** Phase running since the last lap. **/
+    private static int _phase;
+    /** System.nanoTime at start. **/
+    private static long _start;
+    /** System.nanoTime at the last lap. **/
+    private static long _lap;
+
+}
@@ -0,0 +1,208 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/** Branch pointers and HEAD, one small file each, so a command only
+ * reads the refs it asks for. <p></p>
+ * .gitlet/HEAD holds the name of the current branch, and
+ * .gitlet/refs/heads/NAME holds the ID of the head commit of branch NAME.
+ * Branch names are escaped into file names (see fileName), so any name
+ * is a single file in refs/heads: "feature/x" is kept in feature%2Fx and
+ * "../HEAD" in %2E.%2FHEAD.
+ * Refs are read on first use, and changes are only written out by
+ * write, so a failed command leaves every ref as it was. A batch of
+ * commands sharing one Refs undoes the changes of a failed command with
+ * checkpoint and rollback instead.
+ * @author Kevin Moy**/
+
+class Refs {
+
+    /** Open the refs of the .gitlet directory GITLETDIR.
+     * @param gitletDir the .gitlet directory.**/
+    Refs(File gitletDir) {
+        _headFile = new File(gitletDir, "HEAD");
+        _heads = Utils.join(gitletDir, "refs", "heads");
+        _ids = new HashMap<>();
+        _changed = new HashSet<>();
+    }
+
+    /** Return the name of the current branch.
+     * @return HEAD branch name.**/
+    String head() {
+        if (_head == null) {
+            _head = Utils.readContentsAsString(_headFile);
+        }
+        return _head;
+    }
+
+    /** Make BRANCH the current branch.
+     * @param branch branch name.**/
+    void setHead(String branch) {
+        _head = branch;
+        _headChanged = true;
+    }
+
+    /** Return the head commit ID of BRANCH.
+     * @param branch branch name.
+     * @return commit ID, or null if there is no such branch.**/
+    String get(String branch) {
+        if (!_ids.containsKey(branch)) {
+            File f = new File(_heads, fileName(branch));
+            _ids.put(branch, f.isFile() ? Utils.readContentsAsString(f)
+                    : null);
+        }
+        return _ids.get(branch);
+    }
+
+    /** Return true iff BRANCH exists.
+     * @param branch branch name.
+     * @return whether BRANCH exists.**/
+    boolean contains(String branch) {
+        return get(branch) != null;
+    }
+
+    /** Point BRANCH, which need not exist yet, at commit ID.
+     * @param branch branch name.
+     * @param id full commit ID.**/
+    void put(String branch, String id) {
+        _ids.put(branch, id);
+        _changed.add(branch);
+    }
+
+    /** Delete BRANCH.
+     * @param branch branch name.**/
+    void remove(String branch) {
+        _ids.put(branch, null);
+        _changed.add(branch);
+    }
+
+    /** Return the names of all branches, without reading any of them.
+     * @return branch names, in sorted order.**/
+    List<String> branches() {
+        HashSet<String> names = new HashSet<>();
+        List<String> stored = Utils.plainFilenamesIn(_heads);
+        if (stored != null) {
+            for (String name : stored) {
+                names.add(branchName(name));
+            }
+        }
+        for (String branch : _changed) {
+            if (_ids.get(branch) == null) {
+                names.remove(branch);
+            } else {
+                names.add(branch);
+            }
+        }
+        List<String> result = new ArrayList<>(names);
+        result.sort(null);
+        return result;
+    }
+
+    /** Write out HEAD and every branch changed since the last write. **/
+    void write() {
+        if (_headChanged) {
+            Utils.writeContents(_headFile, _head);
+            _headChanged = false;
+        }
+        if (_changed.isEmpty()) {
+            return;
+        }
+        _heads.mkdirs();
+        for (String branch : _changed) {
+            File f = new File(_heads, fileName(branch));
+            String id = _ids.get(branch);
+            if (id == null) {
+                f.delete();
+            } else {
+                Utils.writeContents(f, id);
+            }
+        }
+        _changed.clear();
+    }
+
+    /** Remember the refs as they are now, for rollback. **/
+    void checkpoint() {
+        _saved = new Refs(_headFile.getParentFile());
+        _saved._head = _head;
+        _saved._headChanged = _headChanged;
+        _saved._ids.putAll(_ids);
+        _saved._changed.addAll(_changed);
+    }
+
+    /** Undo every change since the last checkpoint. **/
+    void rollback() {
+        if (_saved != null) {
+            _head = _saved._head;
+            _headChanged = _saved._headChanged;
+            _ids = _saved._ids;
+            _changed = _saved._changed;
+            _saved = null;
+        }
+    }
+
+    /** Return the name of the file in refs/heads of BRANCH: BRANCH with
+     * each '%', '/', backslash and NUL, and a leading '.', written as '%'
+     * and two hex digits, or "%" for the empty name. Names of plain
+     * characters are their own file names.
+     * @param branch branch name.
+     * @return file name.**/
+    static String fileName(String branch) {
+        if (branch.isEmpty()) {
+            return "%";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < branch.length(); i += 1) {
+            char c = branch.charAt(i);
+            if (c == '%' || c == '/' || c == '\\' || c == '\0'
+                || (i == 0 && c == '.')) {
+                result.append(String.format("%%%02X", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the branch whose file in refs/heads is NAME; the inverse
+     * of fileName.
+     * @param name file name.
+     * @return branch name.**/
+    static String branchName(String name) {
+        if (name.equals("%")) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 2 < name.length()) {
+                result.append((char) Integer.parseInt(
+                    name.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** File naming the current branch. **/
+    private File _headFile;
+    /** Directory of branch files. **/
+    private File _heads;
+    /** Current branch, or null until read. **/
+    private String _head;
+    /** True iff _head has not been written yet. **/
+    private boolean _headChanged;
+    /** Branches read or changed so far, mapped to their commit IDs
+     * (null for branches that do not exist). **/
+    private HashMap<String, String> _ids;
+    /** Branches changed since the last write. **/
+    private HashSet<String> _changed;
+    /** Refs as of the last checkpoint, or null. **/
+    private Refs _saved;
+
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/** A gitlet repository driven from Java code in the same process rather
+ * than through Main. <p></p>
+ * Every operation of the command line is a method taking the same
+ * operands. Queries return their results as values instead of printing
+ * them; anything gitlet would report as an error is thrown as a
+ * RepositoryException holding the message gitlet would have printed,
+ * and leaves the refs and staging area as they were. Informational
+ * messages (such as a merge conflict) are returned instead. <p></p>
+ * Operations on one repository run one at a time, in the order they
+ * were called. The ...Async variants of the operations that write the
+ * working tree return at once, and run on a thread of the repository
+ * in call order. <p></p>
+ * As gitlet resolves every path against the working directory of the
+ * process, the repository is the one in that directory.
+ * @author Kevin Moy**/
+
+public interface Repository extends AutoCloseable {
+
+    /** Return the repository in the working directory.
+     * @return repository.**/
+    static Repository open() {
+        return new LocalRepository(false);
+    }
+
+    /** Create a repository in the working directory and return it.
+     * @return new repository.**/
+    static Repository init() {
+        return new LocalRepository(true);
+    }
+
+    /** Stage the files, directories and patterns PATHS (see gitlet add).
+     * @param paths operands of add.**/
+    void add(String... paths);
+
+    /** Commit the staged changes with message MSG.
+     * @param msg commit message.
+     * @return ID of the new commit.**/
+    String commit(String msg);
+
+    /** Unstage FILE, and remove it if it is tracked.
+     * @param file file path.**/
+    void rm(String file);
+
+    /** Return the commits from the head commit back to the initial
+     * commit, following first parents.
+     * @return commits, newest first.**/
+    List<CommitInfo> log();
+
+    /** Return every commit ever made, in no particular order.
+     * @return commits.**/
+    List<CommitInfo> globalLog();
+
+    /** Return the IDs of the commits with message MSG.
+     * @param msg commit message.
+     * @return commit IDs, possibly none.**/
+    List<String> find(String msg);
+
+    /** Return the state of the branches, staging area and working tree.
+     * @return status.**/
+    Status status();
+
+    /** Return the name of the current branch.
+     * @return branch name.**/
+    String currentBranch();
+
+    /** Return the ID of the head commit.
+     * @return commit ID.**/
+    String head();
+
+    /** Restore FILE from the head commit.
+     * @param file file path.**/
+    void checkoutFile(String file);
+
+    /** Restore FILE from the commit with (abbreviated) ID COMMIT.
+     * @param commit commit ID.
+     * @param file file path.**/
+    void checkoutFile(String commit, String file);
+
+    /** Make BRANCH the current branch, updating the working tree.
+     * @param branch branch name.**/
+    void checkout(String branch);
+
+    /** Create BRANCH at the head commit.
+     * @param branch branch name.**/
+    void branch(String branch);
+
+    /** Delete BRANCH.
+     * @param branch branch name.**/
+    void rmBranch(String branch);
+
+    /** Move the current branch to the commit with ID COMMIT, updating the
+     * working tree.
+     * @param commit commit ID.**/
+    void reset(String commit);
+
+    /** Merge BRANCH into the current branch.
+     * @param branch branch name.
+     * @return messages reported by the merge, such as a conflict.**/
+    List<String> merge(String branch);
+
+    /** Pack the objects of the repository. **/
+    void gc();
+
+    /** Asynchronous checkout.
+     * @param branch branch name.
+     * @return future completed when the checkout is done.**/
+    CompletableFuture<Void> checkoutAsync(String branch);
+
+    /** Asynchronous reset.
+     * @param commit commit ID.
+     * @return future completed when the reset is done.**/
+    CompletableFuture<Void> resetAsync(String commit);
+
+    /** Asynchronous merge.
+     * @param branch branch name.
+     * @return future of the messages reported by the merge.**/
+    CompletableFuture<List<String>> mergeAsync(String branch);
+
+    /** Asynchronous add.
+     * @param paths operands of add.
+     * @return future completed when the files are staged.**/
+    CompletableFuture<Void> addAsync(String... paths);
+
+    /** Asynchronous gc.
+     * @return future completed when the objects are packed.**/
+    CompletableFuture<Void> gcAsync();
+
+    /** Wait for the asynchronous operations already started, and stop
+     * the repository's thread. **/
+    @Override
+    void close();
+
+    /** One commit, as log shows it. **/
+    final class CommitInfo {
+
+        /** The commit with full ID, parent IDs PARENTS, timestamp DATE and
+         * message MSG.
+         * @param id commit ID.
+         * @param parents parent commit IDs.
+         * @param date timestamp, formatted as log prints it.
+         * @param msg commit message.**/
+        CommitInfo(String id, List<String> parents, String date,
+                   String msg) {
+            _id = id;
+            _parents = Collections.unmodifiableList(parents);
+            _date = date;
+            _msg = msg;
+        }
+
+        /** Getter method for the commit ID.
+         * @return full commit ID.**/
+        public String id() {
+            return _id;
+        }
+
+        /** Getter method for the parents.
+         * @return parent commit IDs, first parent first.**/
+        public List<String> parents() {
+            return _parents;
+        }
+
+        /** Getter method for the timestamp.
+         * @return timestamp, formatted as log prints it.**/
+        public String date() {
+            return _date;
+        }
+
+        /** Getter method for the message.
+         * @return commit message.**/
+        public String message() {
+            return _msg;
+        }
+
+        @Override
+        public String toString() {
+            return _id;
+        }
+
+        /** Commit ID. **/
+        private final String _id;
+        /** Parent commit IDs. **/
+        private final List<String> _parents;
+        /** Timestamp. **/
+        private final String _date;
+        /** Commit message. **/
+        private final String _msg;
+    }
+
+    /** The sections of gitlet status. **/
+    final class Status {
+
+        /** A status with the given sections.
+         * @param branches all branch names, sorted.
+         * @param current current branch.
+         * @param staged files staged for addition, sorted.
+         * @param removed files staged for removal.
+         * @param modified sorted file -> "modified" or "deleted" map.
+         * @param untracked untracked files, sorted.**/
+        Status(List<String> branches, String current, List<String> staged,
+               List<String> removed, Map<String, String> modified,
+               List<String> untracked) {
+            _branches = Collections.unmodifiableList(branches);
+            _current = current;
+            _staged = Collections.unmodifiableList(staged);
+            _removed = Collections.unmodifiableList(removed);
+            _modified = Collections.unmodifiableMap(modified);
+            _untracked = Collections.unmodifiableList(untracked);
+        }
+
+        /** Getter method for the branches.
+         * @return branch names, sorted.**/
+        public List<String> branches() {
+            return _branches;
+        }
+
+        /** Getter method for the current branch.
+         * @return branch name.**/
+        public String currentBranch() {
+            return _current;
+        }
+
+        /** Getter method for the files staged for addition.
+         * @return file paths, sorted.**/
+        public List<String> staged() {
+            return _staged;
+        }
+
+        /** Getter method for the files staged for removal.
+         * @return file paths, in the order they were removed.**/
+        public List<String> removed() {
+            return _removed;
+        }
+
+        /** Getter method for the modifications not staged for commit.
+         * @return sorted file path -> "modified" or "deleted" map.**/
+        public Map<String, String> modified() {
+            return _modified;
+        }
+
+        /** Getter method for the untracked files.
+         * @return file paths, sorted.**/
+        public List<String> untracked() {
+            return _untracked;
+        }
+
+        /** Branch names. **/
+        private final List<String> _branches;
+        /** Current branch. **/
+        private final String _current;
+        /** Files staged for addition. **/
+        private final List<String> _staged;
+        /** Files staged for removal. **/
+        private final List<String> _removed;
+        /** Modifications not staged for commit. **/
+        private final Map<String, String> _modified;
+        /** Untracked files. **/
+        private final List<String> _untracked;
+    }
+
+}
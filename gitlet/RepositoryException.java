@@ -0,0 +1,16 @@
+package gitlet;
+
+/** An operation of a Repository that gitlet refused, such as checking
+ * out a branch that does not exist. The message is the one the gitlet
+ * command would have printed.
+ * @author Kevin Moy**/
+
+public class RepositoryException extends RuntimeException {
+
+    /** A failure reported with message MSG.
+     * @param msg error message.**/
+    RepositoryException(String msg) {
+        super(msg);
+    }
+
+}
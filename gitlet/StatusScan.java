@@ -0,0 +1,190 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Compares the working directory with the head commit and the staging
+ * area, for the last two sections of status. <p></p>
+ * The files of the directory and its subdirectories are split into
+ * ranges of at most CHUNK_SIZE that are checked in parallel on the
+ * common fork-join pool.
+ * A file is only read and hashed if the index cannot vouch for it by
+ * its metadata (see Index.cachedId). Files that turn out to be unchanged
+ * despite new metadata are recorded in the index afterwards, so the
+ * next scan only has to stat them.
+ * @author Kevin Moy**/
+
+class StatusScan {
+
+    /** Number of files checked by one fork-join task. **/
+    static final int CHUNK_SIZE = 64;
+
+    /** Scan directory DIR against the files HEAD of the head commit and
+     * the staging area in INDEX.
+     * @param dir working directory.
+     * @param head file name -> blob ID map of the head commit.
+     * @param index staging area and stat cache.**/
+    StatusScan(File dir, Map<String, String> head, Index index) {
+        _head = head;
+        _index = index;
+        _staged = index.staged();
+        _removed = new HashSet<>(index.removed());
+        List<String> names = Utils.plainFilesUnder(dir);
+        _names = names.toArray(new String[names.size()]);
+        _files = new File[_names.length];
+        for (int i = 0; i < _names.length; i += 1) {
+            _files[i] = new File(dir, _names[i]);
+        }
+        _states = new int[_files.length];
+        _ids = new String[_files.length];
+        _stats = new Index.Stat[_files.length];
+        ForkJoinPool.commonPool().invoke(new Chunk(0, _files.length));
+        collect();
+    }
+
+    /** Return files changed or deleted since they were committed or
+     * staged, mapped to "modified" or "deleted".
+     * @return sorted file name -> kind of change map.**/
+    TreeMap<String, String> modifications() {
+        return _modifications;
+    }
+
+    /** Return files that are neither staged nor tracked, including
+     * files staged for removal that were created again.
+     * @return sorted file names.**/
+    List<String> untracked() {
+        return _untracked;
+    }
+
+    /** Return the state of working file I, setting _ids[I] and
+     * _stats[I] if it had to be hashed.
+     * @param i position of the file.
+     * @return CLEAN, MODIFIED, UNTRACKED or IGNORED.**/
+    private int check(int i) {
+        String name = _names[i];
+        File f = _files[i];
+        Index.Stat stat = Index.Stat.of(f);
+        if (stat == null) {
+            return IGNORED;
+        }
+        String expected = _staged.get(name);
+        if (expected == null && !_removed.contains(name)) {
+            expected = _head.get(name);
+        }
+        if (expected == null) {
+            return UNTRACKED;
+        }
+        String id = _index.cachedId(name, stat);
+        if (id == null) {
+            id = new Blob(name).getID();
+            _ids[i] = id;
+            _stats[i] = stat;
+        }
+        return id.equals(expected) ? CLEAN : MODIFIED;
+    }
+
+    /** Gather the results of all chunks, find tracked and staged files
+     * missing from the directory, and refresh the index. **/
+    private void collect() {
+        _modifications = new TreeMap<>();
+        _untracked = new ArrayList<>();
+        HashSet<String> present = new HashSet<>();
+        for (int i = 0; i < _files.length; i += 1) {
+            String name = _names[i];
+            if (_states[i] == IGNORED) {
+                continue;
+            }
+            present.add(name);
+            if (_states[i] == UNTRACKED) {
+                _untracked.add(name);
+            } else if (_states[i] == MODIFIED) {
+                _modifications.put(name, "modified");
+            } else if (_ids[i] != null) {
+                _index.record(name, _stats[i], _ids[i]);
+            }
+        }
+        TreeSet<String> tracked = new TreeSet<>(_staged.keySet());
+        for (String name : _head.keySet()) {
+            if (!_removed.contains(name)) {
+                tracked.add(name);
+            }
+        }
+        for (String name : tracked) {
+            if (!present.contains(name)) {
+                _modifications.put(name, "deleted");
+            }
+        }
+    }
+
+    /** Checks the files from position LO up to HI, splitting the range
+     * until it is at most CHUNK_SIZE long. **/
+    private class Chunk extends RecursiveAction {
+
+        /** Check files LO (inclusive) to HI (exclusive).
+         * @param lo first position.
+         * @param hi end position.**/
+        Chunk(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo <= CHUNK_SIZE) {
+                for (int i = _lo; i < _hi; i += 1) {
+                    _states[i] = check(i);
+                }
+                return;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Chunk(_lo, mid), new Chunk(mid, _hi));
+        }
+
+        /** First position. **/
+        private final int _lo;
+        /** End position. **/
+        private final int _hi;
+    }
+
+    /** State of a file whose contents are as committed or staged. **/
+    private static final int CLEAN = 0;
+    /** State of a file whose contents differ from those committed or
+     * staged. **/
+    private static final int MODIFIED = 1;
+    /** State of a file that is neither tracked nor staged. **/
+    private static final int UNTRACKED = 2;
+    /** State of a file that vanished or stopped being a plain file
+     * during the scan. **/
+    private static final int IGNORED = 3;
+
+    /** Files of the head commit. **/
+    private Map<String, String> _head;
+    /** Staging area and stat cache. **/
+    private Index _index;
+    /** Files staged for addition. **/
+    private Map<String, String> _staged;
+    /** Files staged for removal. **/
+    private HashSet<String> _removed;
+    /** Paths of the working files, sorted. **/
+    private String[] _names;
+    /** Working files, in the order of _names. **/
+    private File[] _files;
+    /** State of each of _files. **/
+    private int[] _states;
+    /** Blob IDs of those of _files that had to be hashed. **/
+    private String[] _ids;
+    /** Metadata of those of _files that had to be hashed. **/
+    private Index.Stat[] _stats;
+    /** Result: changed and deleted files. **/
+    private TreeMap<String, String> _modifications;
+    /** Result: untracked files. **/
+    private List<String> _untracked;
+
+}
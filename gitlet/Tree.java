@@ -0,0 +1,327 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A snapshot of one directory of tracked files: maps each file name
+ * to the SHA-1 ID of its blob, and each subdirectory name to the ID of
+ * its own tree. Commits only hold the ID of their root tree, so reading
+ * a commit never drags file contents along with it. <p></p>
+ * Tree IDs are Merkle hashes: a tree's ID covers the IDs of its
+ * subtrees, so two trees with equal IDs hold equal files all the way
+ * down, and comparisons (diff) and updates (update) never look inside
+ * a subdirectory whose ID is unchanged. Subtrees are read from the
+ * object store the first time they are needed. A tree without
+ * subdirectories has the same ID it had when trees were flat. <p></p>
+ * Paths given to and returned by a tree are relative to its directory,
+ * with '/' between components.
+ * @author Kevin Moy**/
+
+public class Tree implements Serializable {
+
+    /** Create a tree from a path -> blob ID map, splitting it into
+     * subtrees for every directory.
+     * @param files snapshot to record (null means no files).**/
+    public Tree(Map<String, String> files) {
+        this._files = new HashMap<>();
+        this._dirs = new HashMap<>();
+        this._subtrees = new HashMap<>();
+        HashMap<String, HashMap<String, String>> nested = new HashMap<>();
+        if (files != null) {
+            for (Map.Entry<String, String> e : files.entrySet()) {
+                String path = e.getKey();
+                int slash = path.indexOf('/');
+                if (slash < 0) {
+                    _files.put(path, e.getValue());
+                } else {
+                    nested.computeIfAbsent(path.substring(0, slash),
+                        k -> new HashMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+                }
+            }
+        }
+        for (String dir : nested.keySet()) {
+            Tree sub = new Tree(nested.get(dir));
+            _dirs.put(dir, sub.getID());
+            _subtrees.put(dir, sub);
+        }
+        this._hashed = hashMe();
+    }
+
+    /** Rebuild the stored tree with ID from its entries (see Codec).
+     * @param files file name -> blob ID map, which the tree keeps.
+     * @param dirs subdirectory name -> tree ID map, which the tree
+     *             keeps.
+     * @param id tree ID.**/
+    Tree(HashMap<String, String> files, HashMap<String, String> dirs,
+         String id) {
+        this._files = files;
+        this._dirs = dirs;
+        this._hashed = id;
+    }
+
+    /** A tree with entries FILES and DIRS whose subtrees, where already
+     * in memory, are SUBTREES, and that reads the others from STORE.
+     * @param files file name -> blob ID map.
+     * @param dirs subdirectory name -> tree ID map.
+     * @param subtrees subdirectory name -> tree map.
+     * @param store object store, or null.**/
+    private Tree(HashMap<String, String> files, HashMap<String, String> dirs,
+                 HashMap<String, Tree> subtrees, ObjectStore store) {
+        this._files = files;
+        this._dirs = dirs;
+        this._subtrees = subtrees;
+        this._store = store;
+        this._hashed = hashMe();
+    }
+
+    /** Return SHA-1 hash of tree. Entries are hashed in sorted order
+     * so equal snapshots always get equal IDs; subdirectory names are
+     * marked with a trailing '/'.
+     * @return unique Tree ID.**/
+    public String hashMe() {
+        TreeMap<String, String> entries = new TreeMap<>();
+        for (String name : _files.keySet()) {
+            entries.put(name, name + "\0" + _files.get(name) + "\n");
+        }
+        for (String name : dirs().keySet()) {
+            entries.put(name + "/", name + "/\0" + _dirs.get(name) + "\n");
+        }
+        List<Object> treeStuff = new ArrayList<>();
+        treeStuff.add("tree");
+        treeStuff.addAll(entries.values());
+        return Utils.sha1(treeStuff);
+    }
+
+    /** Getter method for files. Returns a new map of every file in this
+     * tree and its subtrees, so it reads all of them; prefer get, diff
+     * and update where they will do.
+     * @return path -> blob ID map.**/
+    public HashMap<String, String> getFiles() {
+        HashMap<String, String> result = new HashMap<>();
+        collect("", result);
+        return result;
+    }
+
+    /** Return the blob ID of the file at PATH, reading only the subtrees
+     * on the way to it.
+     * @param path file path.
+     * @return blob ID, or null if there is no such file.**/
+    String get(String path) {
+        String id = _files.get(path);
+        int slash = path.indexOf('/');
+        if (id != null || slash < 0) {
+            return id;
+        }
+        Tree sub = subtree(path.substring(0, slash));
+        return sub == null ? null : sub.get(path.substring(slash + 1));
+    }
+
+    /** Return the files that differ between this tree and OTHER, mapped
+     * to their blob IDs in OTHER (null where OTHER has no such file).
+     * Subtrees with equal IDs are skipped without being read.
+     * @param other tree to compare with.
+     * @return sorted path -> blob ID or null map.**/
+    TreeMap<String, String> diff(Tree other) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(other, "", result);
+        return result;
+    }
+
+    /** Return a tree with the files of this one, except that the files
+     * in STAGED are added or replaced and those in REMOVED are dropped.
+     * Subtrees that none of them fall into are shared, not read.
+     * Directories left empty are dropped.
+     * @param staged path -> blob ID map.
+     * @param removed paths.
+     * @return updated tree.**/
+    Tree update(Map<String, String> staged, Collection<String> removed) {
+        HashMap<String, String> files = new HashMap<>(_files);
+        HashMap<String, String> dirs = new HashMap<>(dirs());
+        HashMap<String, Tree> subtrees = new HashMap<>(subtrees());
+        HashMap<String, HashMap<String, String>> nestedStaged =
+            new HashMap<>();
+        HashMap<String, List<String>> nestedRemoved = new HashMap<>();
+        for (String path : removed) {
+            int slash = path.indexOf('/');
+            if (slash < 0 || files.containsKey(path)) {
+                files.remove(path);
+            } else {
+                nestedRemoved.computeIfAbsent(path.substring(0, slash),
+                    k -> new ArrayList<>()).add(path.substring(slash + 1));
+            }
+        }
+        for (Map.Entry<String, String> e : staged.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                files.put(path, e.getValue());
+            } else {
+                files.remove(path);
+                nestedStaged.computeIfAbsent(path.substring(0, slash),
+                    k -> new HashMap<>())
+                    .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        TreeSet<String> changed = new TreeSet<>(nestedStaged.keySet());
+        changed.addAll(nestedRemoved.keySet());
+        for (String dir : changed) {
+            Tree sub = subtree(dir);
+            if (sub == null) {
+                sub = new Tree((Map<String, String>) null);
+            }
+            sub = sub.update(
+                nestedStaged.getOrDefault(dir, new HashMap<>()),
+                nestedRemoved.getOrDefault(dir, new ArrayList<>()));
+            if (sub.isEmpty()) {
+                dirs.remove(dir);
+                subtrees.remove(dir);
+            } else {
+                dirs.put(dir, sub.getID());
+                subtrees.put(dir, sub);
+            }
+        }
+        return new Tree(files, dirs, subtrees, _store);
+    }
+
+    /** Return true iff this tree holds no files and no subtrees.
+     * @return whether the tree is empty.**/
+    boolean isEmpty() {
+        return _files.isEmpty() && dirs().isEmpty();
+    }
+
+    /** Getter method for the files directly in this directory.
+     * @return unmodifiable file name -> blob ID map.**/
+    Map<String, String> files() {
+        return Collections.unmodifiableMap(_files);
+    }
+
+    /** Getter method for the subdirectories of this directory.
+     * @return unmodifiable subdirectory name -> tree ID map.**/
+    Map<String, String> dirs() {
+        if (_dirs == null) {
+            _dirs = new HashMap<>();
+        }
+        return Collections.unmodifiableMap(_dirs);
+    }
+
+    /** Return the subtree for subdirectory NAME, reading it from the
+     * object store if it is not in memory yet.
+     * @param name subdirectory name.
+     * @return subtree, or null if there is no such subdirectory.**/
+    Tree subtree(String name) {
+        String id = dirs().get(name);
+        if (id == null) {
+            return null;
+        }
+        Tree sub = subtrees().get(name);
+        if (sub == null) {
+            sub = _store.readTree(id);
+            _subtrees.put(name, sub);
+        }
+        return sub;
+    }
+
+    /** Return the subtrees that are in memory, for writing them out.
+     * @return subdirectory name -> tree map.**/
+    Map<String, Tree> loadedSubtrees() {
+        return Collections.unmodifiableMap(subtrees());
+    }
+
+    /** Remember the object store this tree was read from, so its
+     * subtrees can be loaded lazily.
+     * @param store object store.**/
+    void setStore(ObjectStore store) {
+        this._store = store;
+    }
+
+    /**Getter method for unique SHA-1 ID.
+     * @return unique SHA-1 ID.**/
+    public String getID() {
+        return this._hashed;
+    }
+
+    /** Add every file of this tree to RESULT, with PREFIX before its
+     * path.
+     * @param prefix path of this tree's directory, with a trailing '/'
+     *               unless empty.
+     * @param result path -> blob ID map to extend.**/
+    private void collect(String prefix, Map<String, String> result) {
+        for (Map.Entry<String, String> e : _files.entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (String dir : dirs().keySet()) {
+            subtree(dir).collect(prefix + dir + "/", result);
+        }
+    }
+
+    /** Add the differences between this tree and OTHER (either may be
+     * null, meaning empty) to RESULT, with PREFIX before every path.
+     * @param other tree to compare with, or null.
+     * @param prefix path of both trees' directory.
+     * @param result path -> blob ID in OTHER or null map to extend.**/
+    private void diff(Tree other, String prefix, Map<String, String> result) {
+        if (other == null) {
+            HashMap<String, String> gone = new HashMap<>();
+            collect(prefix, gone);
+            for (String path : gone.keySet()) {
+                result.put(path, null);
+            }
+            return;
+        }
+        for (String name : _files.keySet()) {
+            if (!_files.get(name).equals(other._files.get(name))) {
+                result.put(prefix + name, other._files.get(name));
+            }
+        }
+        for (String name : other._files.keySet()) {
+            if (!_files.containsKey(name)) {
+                result.put(prefix + name, other._files.get(name));
+            }
+        }
+        for (String name : dirs().keySet()) {
+            if (!_dirs.get(name).equals(other.dirs().get(name))) {
+                subtree(name).diff(other.subtree(name),
+                        prefix + name + "/", result);
+            }
+        }
+        for (String name : other.dirs().keySet()) {
+            if (!dirs().containsKey(name)) {
+                other.subtree(name).collect(prefix + name + "/", result);
+            }
+        }
+    }
+
+    /** Return the in-memory subtrees, creating the map if this tree was
+     * Java-deserialized.
+     * @return subdirectory name -> tree map.**/
+    private HashMap<String, Tree> subtrees() {
+        if (_subtrees == null) {
+            _subtrees = new HashMap<>();
+        }
+        return _subtrees;
+    }
+
+    /** Maps file name to blob ID. **/
+    private HashMap<String, String> _files;
+    /** Maps subdirectory name to tree ID; null in trees Java-serialized
+     * by older versions, which had none. **/
+    private HashMap<String, String> _dirs;
+    /** Subtrees read or built so far. **/
+    private transient HashMap<String, Tree> _subtrees;
+    /** Object store to read the other subtrees from. **/
+    private transient ObjectStore _store;
+    /** Hashed Tree. **/
+    private String _hashed;
+    /** Serialization version, fixed so trees written with Java
+     * serialization by older versions of gitlet can still be read. **/
+    private static final long serialVersionUID = 9182342090005876212L;
+
+}
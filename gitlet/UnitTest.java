@@ -3,8 +3,24 @@ package gitlet;
 import ucb.junit.textui;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the gitlet package.
@@ -130,6 +146,662 @@ public class UnitTest {
         assertNotEquals("Dumb stuff", Utils.readContentsAsString(f2));
     }
 
+    /** Tests that trees are identified by their contents only. **/
+    @Test
+    public void testTreeIDs() {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a.txt", Utils.sha1("a"));
+        files.put("b.txt", Utils.sha1("b"));
+        Tree t1 = new Tree(files);
+        Tree t2 = new Tree(new HashMap<>(files));
+        assertEquals(t1.getID(), t2.getID());
+        files.put("b.txt", Utils.sha1("c"));
+        assertNotEquals(t1.getID(), new Tree(files).getID());
+        assertEquals(new Tree(null).getID(), new Commit().getTreeID());
+    }
+
+    /** Tests hierarchical trees: subtrees, lookups, updates that share
+     * untouched subtrees, and diffs that skip them. **/
+    @Test
+    public void testTreeHierarchy() throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a.txt", Utils.sha1("a"));
+        files.put("b.txt", Utils.sha1("b"));
+        assertEquals(Utils.sha1("tree", "a.txt\0" + Utils.sha1("a") + "\n",
+                "b.txt\0" + Utils.sha1("b") + "\n"),
+                new Tree(files).getID());
+        files.put("src/x/y.txt", Utils.sha1("y"));
+        files.put("src/z.txt", Utils.sha1("z"));
+        files.put("doc/r.txt", Utils.sha1("r"));
+        Tree tree = new Tree(files);
+        assertEquals(files, tree.getFiles());
+        assertEquals(Utils.sha1("y"), tree.get("src/x/y.txt"));
+        assertNull(tree.get("src/x"));
+        assertEquals(2, tree.dirs().size());
+
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        store.writeTree(tree);
+        Tree back = store.readTree(tree.getID());
+        assertEquals(files, back.getFiles());
+
+        back = store.readTree(tree.getID());
+        HashMap<String, String> staged = new HashMap<>();
+        staged.put("src/x/w.txt", Utils.sha1("w"));
+        Tree updated = back.update(staged, Arrays.asList("a.txt"));
+        files.put("src/x/w.txt", Utils.sha1("w"));
+        files.remove("a.txt");
+        assertEquals(new Tree(files).getID(), updated.getID());
+        TreeMap<String, String> diff = back.diff(updated);
+        assertEquals(2, diff.size());
+        assertEquals(Utils.sha1("w"), diff.get("src/x/w.txt"));
+        assertTrue(diff.containsKey("a.txt"));
+        assertNull(diff.get("a.txt"));
+        assertFalse(back.loadedSubtrees().containsKey("doc"));
+        assertFalse(updated.loadedSubtrees().containsKey("doc"));
+        Tree emptied = updated.update(new HashMap<>(),
+                Arrays.asList("doc/r.txt"));
+        assertFalse(emptied.dirs().containsKey("doc"));
+        assertTrue(back.diff(store.readTree(tree.getID())).isEmpty());
+    }
+
+    /** Tests that the merge base follows second parents. **/
+    @Test
+    public void testMergeBase() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        CommitGraph graph = new CommitGraph(dir, store);
+        Commit ufc = new Commit();
+        Commit a = new Commit("a", ufc.getID(), null);
+        Commit b = new Commit("b", a.getID(), null);
+        Commit c = new Commit("c", ufc.getID(), null);
+        Commit m = new Commit("m", new String[] {c.getID(), b.getID()},
+                null);
+        Commit d = new Commit("d", b.getID(), null);
+        for (Commit commit : new Commit[] {ufc, a, b, c, m, d}) {
+            store.writeCommit(commit);
+            graph.add(commit);
+        }
+        int base = graph.mergeBase(graph.position(m.getID()),
+                graph.position(d.getID()));
+        assertEquals(b.getID(), graph.id(base));
+        assertEquals(4, graph.generation(graph.position(m.getID())));
+        CommitGraph reread = new CommitGraph(dir, store);
+        assertEquals(6, reread.size());
+        assertEquals("m", reread.message(reread.position(m.getID())));
+    }
+
+    /** Tests abbreviated ID lookups, including ambiguous prefixes. **/
+    @Test
+    public void testIdIndex() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        IdIndex ids = new IdIndex(dir, new CommitGraph(dir, store));
+        String a = "ab12" + Utils.sha1("a").substring(4);
+        String b = "ab34" + Utils.sha1("b").substring(4);
+        ids.add(a);
+        ids.add(b);
+        for (int i = 0; i < IdIndex.MERGE_THRESHOLD; i += 1) {
+            ids.add(Utils.sha1("filler" + i));
+        }
+        IdIndex reread = new IdIndex(dir, null);
+        for (IdIndex index : new IdIndex[] {ids, reread}) {
+            assertEquals(2, index.resolve("ab", 2).size());
+            assertEquals(a, index.resolve("ab1", 2).get(0));
+            assertEquals(1, index.resolve("AB3", 2).size());
+            assertEquals(0, index.resolve("xyz", 2).size());
+        }
+    }
+
+    /** Tests that stored blobs are compressed and read back intact. **/
+    @Test
+    public void testCompressedBlobs() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        File f = new File(dir, "big.txt");
+        String contents = "Gucci Gang\n".repeat(1000);
+        Utils.writeContents(f, contents);
+        Blob b = new Blob(f.getPath());
+        store.writeBlob(b);
+        assertEquals(contents, new String(store.readBlob(b.getID())));
+        File shard = new File(new File(dir, "stagingArea"),
+                b.getID().substring(0, 2));
+        assertTrue(shard.listFiles()[0].length() < contents.length() / 10);
+        assertEquals(6, ObjectStore.compressionLevel(null));
+        assertEquals(0, ObjectStore.compressionLevel(" 0"));
+        assertEquals(6, ObjectStore.compressionLevel("11"));
+    }
+
+    /** Tests that binary blobs keep their IDs and come back unchanged. **/
+    @Test
+    public void testBinaryBlobs() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        byte[] contents = new byte[3 * Blob.BUFFER_SIZE + 7];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) (i * 131 + (i >> 7));
+        }
+        File f = new File(dir, "wug.bin");
+        Utils.writeContents(f, contents);
+        Blob b = new Blob(f.getPath());
+        assertEquals(Utils.sha1(f.getPath(), contents,
+                new String(contents, StandardCharsets.UTF_8)), b.getID());
+        store.writeBlob(b);
+        File copy = new File(dir, "copy.bin");
+        store.copyBlob(b.getID(), copy);
+        assertArrayEquals(contents, Utils.readContents(copy));
+    }
+
+    /** Tests that an object cut short is reported, not copied forever. **/
+    @Test
+    public void testTruncatedObject() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        String id = Utils.sha1("truncated");
+        File shard = new File(new File(dir, "stagingArea"),
+                id.substring(0, 2));
+        shard.mkdir();
+        ByteBuffer header = ByteBuffer.allocate(ObjectStore.HEADER_LENGTH);
+        header.put(ObjectStore.MAGIC).put(ObjectStore.STORED).putLong(100);
+        Utils.writeContents(new File(shard, id.substring(2)),
+                header.array(), "ten bytes.".getBytes());
+        try {
+            store.copyBlob(id, new File(dir, "out"));
+            fail("short object copied");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("object shorter than its header says",
+                    excp.getMessage());
+        }
+    }
+
+    /** Tests that a blob whose file changed after it was hashed is not
+     * stored, and that storing leaves no temporary file behind. **/
+    @Test
+    public void testChangedBlob() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        File f = new File(dir, "wug.txt");
+        Utils.writeContents(f, "wug");
+        Blob b = new Blob(f.getPath());
+        Utils.writeContents(f, "not wug");
+        File shard = new File(new File(dir, "stagingArea"),
+                b.getID().substring(0, 2));
+        try {
+            store.writeBlob(b);
+            fail("changed file stored");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(0, shard.list().length);
+        }
+        b = new Blob(f.getPath());
+        shard = new File(shard.getParentFile(), b.getID().substring(0, 2));
+        store.writeBlob(b);
+        assertEquals("not wug", new String(store.readBlob(b.getID())));
+        assertEquals(1, shard.list().length);
+    }
+
+    /** Tests that only paths below the working directory are deleted,
+     * however they are spelled. **/
+    @Test
+    public void testRestrictedDeletePath() throws IOException {
+        File gitletDir = new File(".gitlet");
+        boolean made = gitletDir.mkdir();
+        try {
+            for (String path : new String[] {"..", "../x", "a/../../x",
+                    "a/./../b/../../x", new File("x").getAbsolutePath()}) {
+                try {
+                    Utils.restrictedDeletePath(path);
+                    fail("deleted " + path);
+                } catch (IllegalArgumentException excp) {
+                    continue;
+                }
+            }
+            File f = new File("testFile1");
+            Utils.writeContents(f, "doomed");
+            assertTrue(Utils.restrictedDeletePath("a/../testFile1"));
+            assertFalse(f.exists());
+        } finally {
+            if (made) {
+                gitletDir.delete();
+            }
+        }
+    }
+
+    /** Tests that deltas rebuild the target and stay small. **/
+    @Test
+    public void testDelta() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            text.append("line ").append(i).append("\n");
+        }
+        byte[] base = text.toString().getBytes();
+        byte[] target = text.insert(5000, "NEW STUFF").delete(100, 140)
+            .toString().getBytes();
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 100);
+        byte[] empty = new byte[0];
+        assertArrayEquals(base, Delta.apply(empty, Delta.create(empty, base)));
+    }
+
+    /** Tests that commits and trees survive the binary codec, and that
+     * Java-serialized objects can still be read. **/
+    @Test
+    public void testCodec() {
+        HashMap<String, String> files = new HashMap<>();
+        files.put("wug.txt", Utils.sha1("wug"));
+        files.put("n\u00e4me", Utils.sha1("other"));
+        Commit c = new Commit("two parents", new String[]{
+            Utils.sha1("a"), Utils.sha1("b")}, files);
+        Commit back = Codec.decodeCommit(Codec.encode(c), c.getID());
+        assertEquals(c.getID(), back.hashMe());
+        assertArrayEquals(c.getParents(), back.getParents());
+        Tree tree = c.getTree();
+        Tree treeBack = Codec.decodeTree(Codec.encode(tree), tree.getID());
+        assertEquals(files, treeBack.getFiles());
+        assertEquals(tree.getID(), treeBack.hashMe());
+        assertEquals(files,
+                Codec.decodeTree(Utils.serialize(tree), null).getFiles());
+        Commit ufc = new Commit();
+        assertEquals(ufc.getID(),
+                Codec.decodeCommit(Utils.serialize(ufc), null).hashMe());
+        assertEquals(ufc.getID(),
+                Codec.decodeCommit(Codec.encode(ufc), ufc.getID()).hashMe());
+        assertTrue(Codec.encode(c).length < Utils.serialize(c).length / 2);
+    }
+
+    /** Tests that refs and the index are only written when changed,
+     * and read back as written. **/
+    @Test
+    public void testRefsAndIndex() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Refs refs = new Refs(dir);
+        refs.setHead("master");
+        refs.put("master", Utils.sha1("a"));
+        refs.put("topic", Utils.sha1("b"));
+        refs.write();
+        refs.remove("topic");
+        assertEquals(Arrays.asList("master"), refs.branches());
+        Refs reread = new Refs(dir);
+        assertEquals("master", reread.head());
+        assertEquals(Utils.sha1("b"), reread.get("topic"));
+        assertFalse(reread.contains("nope"));
+        assertEquals(Arrays.asList("master", "topic"), reread.branches());
+        Index index = new Index(dir);
+        index.stage("wug.txt", Utils.sha1("wug"));
+        index.stageRemoval("gone.txt");
+        index.write();
+        File indexFile = new File(dir, "index");
+        assertTrue(indexFile.delete());
+        index.unstage("never-staged.txt");
+        index.write();
+        assertFalse(indexFile.exists());
+        index.stageRemoval("old.txt");
+        index.write();
+        Index rereadIndex = new Index(dir);
+        assertEquals(Utils.sha1("wug"), rereadIndex.staged().get("wug.txt"));
+        assertEquals(Arrays.asList("gone.txt", "old.txt"),
+                rereadIndex.removed());
+    }
+
+    /** Tests that any branch name, even one that looks like a path, is
+     * kept in one file of refs/heads. **/
+    @Test
+    public void testRefNames() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File head = new File(dir, "HEAD");
+        Refs refs = new Refs(dir);
+        refs.setHead("master");
+        refs.put("master", Utils.sha1("a"));
+        refs.put("feature/x", Utils.sha1("b"));
+        refs.write();
+        assertTrue(head.isFile());
+        assertFalse(new Refs(dir).contains("../../HEAD"));
+        refs.remove("../../HEAD");
+        refs.write();
+        assertTrue(head.isFile());
+        assertTrue(Utils.join(dir, "refs", "heads", "feature%2Fx").isFile());
+        Refs reread = new Refs(dir);
+        assertEquals(Utils.sha1("b"), reread.get("feature/x"));
+        assertEquals(Arrays.asList("feature/x", "master"),
+                reread.branches());
+        for (String name : new String[] {"", ".", "..", "a%2Fb", "c\\d",
+                                          "e\0f", ".hidden", "plain"}) {
+            String file = Refs.fileName(name);
+            assertFalse(file.isEmpty() || file.contains("/")
+                        || file.startsWith("."));
+            assertEquals(name, Refs.branchName(file));
+        }
+        assertEquals("plain", Refs.fileName("plain"));
+    }
+
+    /** Tests that the index trusts cached blob IDs only for files whose
+     * metadata is unchanged and older than the index. **/
+    @Test
+    public void testStatCache() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File f = new File(dir, "wug.txt");
+        Utils.writeContents(f, "wug");
+        f.setLastModified(System.currentTimeMillis() - 10000);
+        Index index = new Index(dir);
+        index.record("wug.txt", Index.Stat.of(f), Utils.sha1("wug"));
+        assertNull(index.cachedId("wug.txt", Index.Stat.of(f)));
+        index.write();
+        Index reread = new Index(dir);
+        assertEquals(Utils.sha1("wug"),
+                reread.cachedId("wug.txt", Index.Stat.of(f)));
+        Utils.writeContents(f, "wugs");
+        f.setLastModified(System.currentTimeMillis() - 10000);
+        assertNull(reread.cachedId("wug.txt", Index.Stat.of(f)));
+        f.setLastModified(System.currentTimeMillis() + 10000);
+        assertNull(reread.cachedId("wug.txt", Index.Stat.of(f)));
+        assertNull(Index.Stat.of(dir));
+    }
+
+    /** Tests the SHA-1 helpers: known values, hex and binary forms, and
+     * incremental hashing. **/
+    @Test
+    public void testSha1() {
+        String abc = "a9993e364706816aba3e25717850c26c9cd0d89d";
+        assertEquals(abc, Utils.sha1("abc"));
+        assertEquals(abc, Utils.sha1("a", "bc".getBytes()));
+        assertEquals(abc, Utils.toHex(Utils.sha1Binary("abc")));
+        assertEquals(Utils.UID_LENGTH, Utils.sha1().length());
+        MessageDigest md = Utils.newSha1();
+        Utils.sha1Update(md, "ab");
+        Utils.sha1Update(md, "c");
+        assertEquals(abc, Utils.toHex(md.digest()));
+        assertEquals(abc, Utils.sha1("abc"));
+    }
+
+    /** Tests expanding the operands of add. **/
+    @Test
+    public void testBulkAddExpand() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        for (String name : new String[] {"testFile1", "testFile2",
+                                          "src/Bulk.java", "src/Gitlet.java",
+                                          "src/x/y.txt", ".gitlet/HEAD"}) {
+            File f = new File(dir, name);
+            f.getParentFile().mkdirs();
+            Utils.writeContents(f, name);
+        }
+        assertEquals(Arrays.asList("testFile1", "testFile2"),
+                BulkAdd.expand(dir, Arrays.asList("testFile?",
+                        "testFile1")));
+        assertEquals(Arrays.asList("src/Bulk.java"),
+                BulkAdd.expand(dir, Arrays.asList("src/Bulk*.java")));
+        assertEquals(Arrays.asList("src/Bulk.java", "src/Gitlet.java",
+                "src/x/y.txt", "testFile1", "testFile2"),
+                BulkAdd.expand(dir, Arrays.asList(".")));
+        assertEquals(Arrays.asList("src/Bulk.java", "src/Gitlet.java",
+                "src/x/y.txt"), BulkAdd.expand(dir,
+                        Arrays.asList("./src/x/..")));
+        List<String> messages = new ArrayList<>();
+        List<String> previous = Utils.collectMessages(messages);
+        try {
+            BulkAdd.expand(dir, Arrays.asList("nope*"));
+            fail("expanded a pattern matching nothing");
+        } catch (GitletException excp) {
+            assertEquals(Arrays.asList("File does not exist."), messages);
+        } finally {
+            Utils.collectMessages(previous);
+        }
+    }
+
+    /** Tests writing blobs to working files in parallel. **/
+    @Test
+    public void testMaterializer() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        ObjectStore store = new ObjectStore(dir);
+        store.createDirectories();
+        String[] ids = new String[6];
+        for (int i = 0; i < ids.length; i += 1) {
+            File f = new File(dir, "in" + i);
+            Utils.writeContents(f, "contents " + i);
+            Blob b = new Blob(f.getPath());
+            store.writeBlob(b);
+            ids[i] = b.getID();
+        }
+        Materializer writer = new Materializer(store, 4, 2);
+        for (int i = 0; i < ids.length; i += 1) {
+            writer.write(new File(dir, "out/" + i).getPath(), ids[i]);
+        }
+        Map<String, Index.Stat> written = writer.finish();
+        assertEquals(ids.length, written.size());
+        for (int i = 0; i < ids.length; i += 1) {
+            File f = new File(dir, "out/" + i);
+            assertEquals("contents " + i, Utils.readContentsAsString(f));
+            assertEquals(Index.Stat.of(f), written.get(f.getPath()));
+        }
+
+        writer = new Materializer(store, 4, 2);
+        writer.write(new File(dir, "z").getPath(), ids[0]);
+        writer.write(new File(dir, "b").getPath(), Utils.sha1("none"));
+        writer.write(new File(dir, "a").getPath(), Utils.sha1("nothing"));
+        try {
+            writer.finish();
+            fail("missing blob written");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(new File(dir, "z").isFile());
+        }
+    }
+
+    /** Tests a daemon serving the working directory: commands sent to
+     * it come back as frames of standard output and standard error and
+     * an exit code, and "daemon stop" ends it. Commands run in process
+     * while no daemon listens. **/
+    @Test
+    public void testDaemon() throws Exception {
+        File gitletDir = new File(".gitlet");
+        assertTrue("a repository is in the way", gitletDir.mkdir());
+        Thread server = new Thread(Daemon::serve);
+        server.setDaemon(true);
+        try {
+            assertNull(Daemon.forward("status"));
+            server.start();
+            for (int i = 0; !daemonListening(); i += 1) {
+                assertTrue("daemon did not start", i < 500);
+                Thread.sleep(10);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(0, sendToDaemon(out, err, "bogus"));
+            assertEquals("No command with that name exists.\n",
+                    out.toString());
+            assertEquals("", err.toString());
+            out.reset();
+            assertEquals(1, sendToDaemon(out, err, "status"));
+            assertEquals("", out.toString());
+            assertTrue(err.toString().contains("IllegalArgumentException"));
+            assertEquals(Integer.valueOf(0), Daemon.forward("daemon", "stop"));
+            server.join(5000);
+            assertFalse(server.isAlive());
+            assertFalse(new File(Daemon.SOCKET).exists());
+        } finally {
+            new File(Daemon.SOCKET).delete();
+            gitletDir.delete();
+        }
+    }
+
+    /** Return true iff the daemon of the working directory accepts
+     * connections. The connection is closed without a command, which
+     * the daemon ignores.
+     * @return whether the daemon listens.**/
+    private static boolean daemonListening() {
+        try (SocketChannel channel = SocketChannel.open(
+                 UnixDomainSocketAddress.of(Daemon.SOCKET))) {
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Send the command ARGS to the daemon of the working directory,
+     * copying the OUT frames of its reply to OUT and the ERR frames to
+     * ERR.
+     * @param out standard output of the command.
+     * @param err standard error of the command.
+     * @param args command and operands.
+     * @return exit code from the EXIT frame.**/
+    private static int sendToDaemon(ByteArrayOutputStream out,
+                                    ByteArrayOutputStream err,
+                                    String... args) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(
+                 UnixDomainSocketAddress.of(Daemon.SOCKET))) {
+            DataOutputStream request =
+                new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                request.writeInt(bytes.length);
+                request.write(bytes);
+            }
+            DataInputStream reply =
+                new DataInputStream(Channels.newInputStream(channel));
+            while (true) {
+                int kind = reply.readByte();
+                int length = reply.readInt();
+                if (kind == Daemon.EXIT) {
+                    return length;
+                }
+                byte[] bytes = new byte[length];
+                reply.readFully(bytes);
+                (kind == Daemon.ERR ? err : out).write(bytes);
+            }
+        }
+    }
+
+    /** Tests splitting batch lines and undoing failed commands. **/
+    @Test
+    public void testBatch() throws IOException {
+        assertEquals(Arrays.asList("commit", "a b", "c'd", "e\"f"),
+                Batch.split("  commit \"a b\" \"c'd\" e\\\"f "));
+        assertEquals(Arrays.asList("x", "", "a\\b"),
+                Batch.split("x '' 'a\\b'"));
+        assertTrue(Batch.split(" ").isEmpty());
+
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        Refs refs = new Refs(dir);
+        Index index = new Index(dir);
+        refs.setHead("master");
+        refs.put("master", Utils.sha1("a"));
+        index.stage("f", Utils.sha1("f"));
+        refs.checkpoint();
+        index.checkpoint();
+        refs.put("other", Utils.sha1("b"));
+        refs.setHead("other");
+        index.stage("g", Utils.sha1("g"));
+        index.stageRemoval("f");
+        refs.rollback();
+        index.rollback();
+        assertEquals("master", refs.head());
+        assertEquals(Arrays.asList("master"), refs.branches());
+        assertEquals(1, index.staged().size());
+        assertTrue(index.removed().isEmpty());
+    }
+
+    /** Tests that the embedded API reports errors as exceptions. **/
+    @Test
+    public void testRepositoryErrors() {
+        List<String> messages = new ArrayList<>();
+        Utils.collectMessages(messages);
+        Utils.message("No %s exists.", "wug");
+        assertSame(messages, Utils.collectMessages(null));
+        assertEquals(Arrays.asList("No wug exists."), messages);
+        try {
+            Repository.open();
+            fail("opened a repository outside one");
+        } catch (RepositoryException excp) {
+            assertEquals("Not in an initialized Gitlet directory.",
+                    excp.getMessage());
+        }
+    }
+
+    /** Tests the counters and report of a profiled command. **/
+    @Test
+    public void testProfile() throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread fresh = new Thread(() -> {
+            try {
+                profileOnFreshThread();
+            } catch (Throwable excp) {
+                failure[0] = excp;
+            }
+        });
+        fresh.start();
+        fresh.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /** Body of testProfile, run on a thread that has not hashed yet, so
+     * its per-thread digest is first made while profiling. **/
+    private void profileOnFreshThread() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        File f = new File(dir, "wug.txt");
+        Profile.start();
+        try {
+            Utils.sha1("ab", "c");
+            Utils.writeContents(f, "wug", new byte[] {'!'});
+            assertEquals(4, Utils.readContents(f).length);
+            Utils.plainFilenamesIn(dir);
+            Profile.lap(Profile.LOAD);
+            assertEquals(1, Profile.counter("sha1_calls"));
+            assertEquals(3, Profile.counter("sha1_bytes"));
+            assertEquals(4, Profile.counter("bytes_written"));
+            assertEquals(4, Profile.counter("bytes_read"));
+            assertEquals(1, Profile.counter("dir_listings"));
+            String report = Profile.report("status", false);
+            assertTrue(report.matches("\\{\"command\":\"status\","
+                + "\"failed\":false,\"phases_ms\":\\{\"load\":[0-9.]+,"
+                + "\"command\":[0-9.]+,\"save\":[0-9.]+,"
+                + "\"total\":[0-9.]+\\},\"counters\":\\{"
+                + "\"commits_read\":0,\"trees_read\":0,\"bytes_read\":4,"
+                + "\"bytes_written\":4,\"sha1_calls\":1,"
+                + "\"sha1_bytes\":3,\"dir_listings\":1,"
+                + "\"cache_hits\":0,\"cache_misses\":0\\}\\}"));
+        } finally {
+            Profile.stop();
+        }
+        Utils.sha1("more");
+        assertEquals(1, Profile.counter("sha1_calls"));
+    }
+
+    /** Tests that the object cache evicts by size, least recently used
+     * first, and counts its hits and misses. **/
+    @Test
+    public void testObjectCache() {
+        ObjectCache cache = new ObjectCache(80);
+        cache.put("a", "A", 10);
+        cache.put("b", "B", 10);
+        cache.put("huge", "H", 11);
+        assertNull(cache.get("huge"));
+        assertEquals("A", cache.get("a"));
+        for (int i = 0; i < 7; i += 1) {
+            cache.put("x" + i, "X", 10);
+        }
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(8, cache.count());
+        assertEquals(80, cache.size());
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        ObjectCache off = new ObjectCache(0);
+        off.put("a", "A", 0);
+        assertNull(off.get("a"));
+        assertEquals(ObjectStore.DEFAULT_CACHE_SIZE,
+                ObjectStore.cacheSize("lots"));
+        assertEquals(0, ObjectStore.cacheSize("0"));
+    }
+
     /** Tests a shit command. **/
     @Test
     public void testShittyCommand() {
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -10,12 +11,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -32,25 +35,7 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
-        }
+        return toHex(sha1Binary(vals));
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -59,6 +44,85 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the 20-byte binary SHA-1 hash of the concatenation of VALS,
+     *  which may be any mixture of byte arrays and Strings.  Uses a digest
+     *  kept by the calling thread, so no digest is created per call. */
+    static byte[] sha1Binary(Object... vals) {
+        MessageDigest md = Profile.counted(SHA1_DIGESTS.get());
+        md.reset();
+        for (Object val : vals) {
+            sha1Update(md, val);
+        }
+        return md.digest();
+    }
+
+    /** Returns a new SHA-1 digest for hashing incrementally with
+     *  sha1Update or MessageDigest.update.  Cheaper than
+     *  MessageDigest.getInstance, since no provider lookup is done.
+     *  Counted while profiling (see Profile). */
+    static MessageDigest newSha1() {
+        return Profile.counted(uncountedSha1());
+    }
+
+    /** Returns a new SHA-1 digest, cloned from SHA1_PROTOTYPE and never
+     *  counted by Profile. */
+    private static MessageDigest uncountedSha1() {
+        try {
+            return (MessageDigest) SHA1_PROTOTYPE.clone();
+        } catch (CloneNotSupportedException excp) {
+            return sha1Instance();
+        }
+    }
+
+    /** Adds VAL, a byte array or a String (as UTF-8), to the hash being
+     *  computed by MD. */
+    static void sha1Update(MessageDigest md, Object val) {
+        if (val instanceof byte[]) {
+            md.update((byte[]) val);
+        } else if (val instanceof String) {
+            md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+        } else {
+            throw new IllegalArgumentException("improper type to sha1");
+        }
+    }
+
+    /** Returns the lower-case hexadecimal numeral of BYTES. */
+    static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    /** Returns the lower-case hexadecimal numeral of the LENGTH bytes of
+     *  BYTES starting at OFFSET. */
+    static String toHex(byte[] bytes, int offset, int length) {
+        char[] result = new char[2 * length];
+        for (int i = 0; i < length; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns a SHA-1 digest from the security providers. */
+    private static MessageDigest sha1Instance() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Lower-case hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Digest cloned by newSha1. */
+    private static final MessageDigest SHA1_PROTOTYPE = sha1Instance();
+
+    /** Per-thread digests used by sha1 and sha1Binary, which count
+     *  each use themselves while profiling. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGESTS =
+        ThreadLocal.withInitial(Utils::uncountedSha1);
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -84,6 +148,30 @@ class Utils {
         return restrictedDelete(new File(file));
     }
 
+    /** Deletes the plain file at PATH, relative to the current directory,
+     *  and then each of its parent directories that it leaves empty.
+     *  Returns true if the file was deleted.  Refuses to delete anything
+     *  and throws IllegalArgumentException unless the current directory
+     *  contains a directory named .gitlet and PATH, once normalized,
+     *  lies below it. */
+    static boolean restrictedDeletePath(String path) {
+        Path normal = Paths.get(path).normalize();
+        if (!new File(".gitlet").isDirectory() || normal.isAbsolute()
+            || normal.startsWith("..")) {
+            throw new IllegalArgumentException(
+                "not .gitlet working directory");
+        }
+        File file = normal.toFile();
+        if (!file.isFile() || !file.delete()) {
+            return false;
+        }
+        for (File dir = file.getParentFile(); dir != null && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+        return true;
+    }
+
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
@@ -94,7 +182,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Profile.read(contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -120,11 +210,10 @@ class Utils {
             BufferedOutputStream str =
                 new BufferedOutputStream(Files.newOutputStream(file.toPath()));
             for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+                byte[] bytes = obj instanceof byte[] ? (byte[]) obj
+                    : ((String) obj).getBytes(StandardCharsets.UTF_8);
+                str.write(bytes);
+                Profile.written(bytes.length);
             }
             str.close();
         } catch (IOException | ClassCastException excp) {
@@ -169,6 +258,7 @@ class Utils {
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
         String[] files = dir.list(PLAIN_FILES);
+        Profile.listed();
         if (files == null) {
             return null;
         } else {
@@ -184,6 +274,38 @@ class Utils {
         return plainFilenamesIn(new File(dir));
     }
 
+    /** Returns the paths, relative to DIR and with '/' between their
+     *  components, of all plain files in DIR and its subdirectories, in
+     *  lexicographic order as Java Strings.  Directories named .gitlet
+     *  and symbolic links to directories are skipped.  Returns an empty
+     *  list if DIR does not denote a directory. */
+    static List<String> plainFilesUnder(File dir) {
+        List<String> result = new ArrayList<>();
+        plainFilesUnder(dir, "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Adds the paths of the plain files under DIR, with PREFIX before
+     *  each, to RESULT. */
+    private static void plainFilesUnder(File dir, String prefix,
+                                        List<String> result) {
+        File[] files = dir.listFiles();
+        Profile.listed();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile()) {
+                result.add(prefix + file.getName());
+            } else if (file.isDirectory()
+                       && !file.getName().equals(".gitlet")
+                       && !Files.isSymbolicLink(file.toPath())) {
+                plainFilesUnder(file, prefix + file.getName() + "/", result);
+            }
+        }
+    }
+
     /* OTHER FILE UTILITIES */
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -215,6 +337,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as
@@ -224,12 +362,33 @@ class Utils {
     }
 
     /** Print a message composed from MSG and ARGS as for the String.format
-     *  method, followed by a newline. */
+     *  method, followed by a newline. While the current thread collects
+     *  messages (see collectMessages), the message is added to them
+     *  instead. */
     static void message(String msg, Object... args) {
+        List<String> collected = MESSAGES.get();
+        if (collected != null) {
+            collected.add(String.format(msg, args));
+            return;
+        }
         System.out.printf(msg, args);
         System.out.println();
     }
 
+    /** Make message add the messages of the current thread to INTO
+     *  rather than print them, or print them again if INTO is null.
+     *  @param into list to collect messages in, or null.
+     *  @return the list messages were collected in before, or null. */
+    static List<String> collectMessages(List<String> into) {
+        List<String> previous = MESSAGES.get();
+        MESSAGES.set(into);
+        return previous;
+    }
+
+    /** Messages of each thread that collects them. */
+    private static final ThreadLocal<List<String>> MESSAGES =
+        new ThreadLocal<>();
+
     /** FUNCTIONS */
 
     /** Represents a function from T1 -> T2.  The apply method contains the